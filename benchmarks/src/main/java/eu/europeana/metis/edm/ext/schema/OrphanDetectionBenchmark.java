@@ -0,0 +1,106 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import eu.europeana.metis.edm.ext.schema.benchmarks.BenchmarkFormat;
+import eu.europeana.metis.edm.ext.schema.benchmarks.RecordGenerator;
+import eu.europeana.metis.edm.ext.schema.benchmarks.RecordGeneratorConfig;
+import eu.europeana.metis.edm.ext.schema.benchmarks.RecordGeneratorConfig.RecordSize;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.RDFParserBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Benchmark for the orphan detection of {@link EdmExternalValidator}: the reachability pass
+ * over the graph, next to the SPARQL query with an arbitrary-length property path that it
+ * replaced (kept in this class as a baseline). This class lives in the package of the code under
+ * test, as the method is not public.
+ * </p>
+ * <p>The records with many web resources and with a long blank node chain are the cases in which
+ * the query is slow. The setup verifies that both implementations find the same orphans.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class OrphanDetectionBenchmark {
+
+  private static final String ORPHAN_DETECT_QUERY = """
+      PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>
+      PREFIX ore: <http://www.openarchives.org/ore/terms/>
+      SELECT DISTINCT ?orphan
+      WHERE {
+          ?orphan ?pred ?object .
+          FILTER NOT EXISTS {
+              ?source (<>|!<>)* ?orphan .
+              ?source rdf:type ore:Aggregation .
+          } .
+      }""";
+
+  @Param({"LARGE", "MANY_WEB_RESOURCES"})
+  public RecordSize size;
+
+  @Param({"0", "500"})
+  public int blankNodeChainLength;
+
+  private Model recordModel;
+
+  @Setup
+  public void setUp() {
+    final RecordGenerator generator = new RecordGenerator(
+        RecordGeneratorConfig.of(size, true).withBlankNodeChainLength(blankNodeChainLength));
+    recordModel = ModelFactory.createDefaultModel();
+    RDFParserBuilder.create().fromString(generator.generateRecord(0, BenchmarkFormat.TURTLE))
+        .lang(BenchmarkFormat.TURTLE.getLang()).parse(recordModel.getGraph());
+
+    // Check that we compare implementations with the same outcome.
+    // Blank nodes are reported without subject, so we also compare the number of orphans.
+    final Set<Node> expected = detectOrphansWithSparql();
+    final List<ValidationReportItem> actualItems = detectOrphans();
+    final Set<String> actual = new HashSet<>();
+    actualItems.forEach(item -> actual.add(item.subject()));
+    final Set<String> expectedSubjects = new HashSet<>();
+    expected.forEach(node -> expectedSubjects.add(node.isBlank() ? null : node.getURI()));
+    if (expected.size() != actualItems.size() || !expectedSubjects.equals(actual)) {
+      throw new IllegalStateException(
+          "The implementations differ: " + expectedSubjects + " versus " + actual);
+    }
+  }
+
+  @Benchmark
+  public List<ValidationReportItem> detectOrphans() {
+    return EdmExternalValidator.checkForOrphanedResources(recordModel);
+  }
+
+  @Benchmark
+  public Set<Node> detectOrphansWithSparql() {
+    final Set<Node> orphans = new HashSet<>();
+    try (QueryExecution execution = QueryExecutionFactory
+        .create(QueryFactory.create(ORPHAN_DETECT_QUERY), recordModel)) {
+      final ResultSet results = execution.execSelect();
+      results.forEachRemaining(result -> orphans.add(result.get("orphan").asNode()));
+    }
+    return orphans;
+  }
+}
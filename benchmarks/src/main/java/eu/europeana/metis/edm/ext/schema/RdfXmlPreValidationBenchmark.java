@@ -0,0 +1,274 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import eu.europeana.metis.edm.ext.schema.benchmarks.BenchmarkFormat;
+import eu.europeana.metis.edm.ext.schema.benchmarks.RecordGenerator;
+import eu.europeana.metis.edm.ext.schema.benchmarks.RecordGeneratorConfig;
+import eu.europeana.metis.edm.ext.schema.benchmarks.RecordGeneratorConfig.RecordSize;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.StreamSupport;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Benchmark for {@link RdfXmlPreValidationUtils}: the normalization and pre-validation of
+ * RDF/XML records. This class lives in the package of the code under test, as the method is not
+ * public. Run with <code>-prof gc</code> to see the allocation per record
+ * (<code>gc.alloc.rate.norm</code>).
+ * </p>
+ * <p>For comparison, the benchmark also runs the previous implementation, based on the StAX event
+ * API with factories created per record, which is kept in this class as a baseline (see
+ * {@link EventApiNormalizedXmlInputStream}). The records are read either in bulk or one byte at a
+ * time (as some stream wrappers in parsers do).
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RdfXmlPreValidationBenchmark {
+
+  /**
+   * The ways in which the normalized record is read.
+   */
+  public enum ReadMode {BULK, SINGLE_BYTE}
+
+  @Param({"SMALL", "MEDIUM", "LARGE"})
+  public RecordSize size;
+
+  @Param({"BULK", "SINGLE_BYTE"})
+  public ReadMode readMode;
+
+  private byte[] record;
+  private byte[] buffer;
+
+  @Setup
+  public void setUp() {
+    record = new RecordGenerator(RecordGeneratorConfig.of(size, true))
+        .generateRecord(0, BenchmarkFormat.XML).getBytes(StandardCharsets.UTF_8);
+    buffer = new byte[8192];
+  }
+
+  @Benchmark
+  public long normalizeAndPreValidate() throws IOException {
+    try (InputStream normalized = RdfXmlPreValidationUtils.normalizeAndPreValidateXmlData(
+        new ByteArrayInputStream(record), item -> {
+        }, true)) {
+      return consume(normalized);
+    }
+  }
+
+  @Benchmark
+  public long normalizeAndPreValidateWithEventApi() throws IOException {
+    try (InputStream normalized = new EventApiNormalizedXmlInputStream(
+        new ByteArrayInputStream(record), item -> {
+        }, true)) {
+      return consume(normalized);
+    }
+  }
+
+  private long consume(InputStream normalized) throws IOException {
+    long length = 0;
+    if (readMode == ReadMode.SINGLE_BYTE) {
+      while (normalized.read() >= 0) {
+        length++;
+      }
+    } else {
+      int read;
+      while ((read = normalized.read(buffer)) >= 0) {
+        length += read;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * The baseline: the normalization as it was implemented before the StAX cursor API was used
+   * (with factories created per record, an event object per token, rebuilt start elements and a
+   * stream per attribute list). Only used for comparison.
+   */
+  private static final class EventApiNormalizedXmlInputStream extends InputStream {
+
+    private static final String EDM_NAMESPACE = "http://www.europeana.eu/schemas/edm/";
+    private static final Set<String> TOP_LEVEL_ELEMENTS = Set.of(
+        EDM_NAMESPACE + "ProvidedCHO",
+        "http://www.openarchives.org/ore/terms/Aggregation",
+        EDM_NAMESPACE + "WebResource",
+        EDM_NAMESPACE + "Agent",
+        "http://www.w3.org/2004/02/skos/core#Concept",
+        EDM_NAMESPACE + "Place",
+        EDM_NAMESPACE + "TimeSpan",
+        "http://creativecommons.org/ns#License",
+        "http://rdfs.org/sioc/services#Service");
+    private static final int EVENTS_PER_BATCH = 256;
+
+    private final Consumer<ValidationReportItem> reportItemConsumer;
+    private final boolean reportNestedElements;
+    private final XMLEventFactory eventFactory = XMLEventFactory.newInstance();
+    private final ExposedByteArrayOutputStream buffer = new ExposedByteArrayOutputStream();
+    private XMLEventReader reader;
+    private XMLEventWriter writer;
+    private int position = 0;
+    private int currentDepth = 0;
+    private boolean finished = false;
+
+    EventApiNormalizedXmlInputStream(InputStream xmlData,
+        Consumer<ValidationReportItem> reportItemConsumer, boolean reportNestedElements) {
+      this.reportItemConsumer = reportItemConsumer;
+      this.reportNestedElements = reportNestedElements;
+      try {
+        this.reader = XMLInputFactory.newInstance().createXMLEventReader(xmlData);
+        this.writer = XMLOutputFactory.newInstance().createXMLEventWriter(buffer);
+      } catch (XMLStreamException | RuntimeException e) {
+        handleReadError(e);
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      final byte[] singleByte = new byte[1];
+      final int bytesRead = read(singleByte, 0, 1);
+      return bytesRead < 0 ? -1 : (singleByte[0] & 0xFF);
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      Objects.checkFromIndexSize(offset, length, bytes.length);
+      if (length == 0) {
+        return 0;
+      }
+      if (position >= buffer.size()) {
+        fillBuffer();
+        if (position >= buffer.size()) {
+          return -1;
+        }
+      }
+      final int bytesToCopy = Math.min(length, buffer.size() - position);
+      System.arraycopy(buffer.getBytes(), position, bytes, offset, bytesToCopy);
+      position += bytesToCopy;
+      return bytesToCopy;
+    }
+
+    @Override
+    public void close() throws IOException {
+      finished = true;
+      try {
+        if (reader != null) {
+          reader.close();
+        }
+        if (writer != null) {
+          writer.close();
+        }
+      } catch (XMLStreamException e) {
+        throw new IOException("Could not close the XML stream.", e);
+      }
+    }
+
+    private void fillBuffer() {
+      buffer.reset();
+      position = 0;
+      try {
+        while (buffer.size() == 0 && !finished) {
+          for (int i = 0; i < EVENTS_PER_BATCH && reader.hasNext(); i++) {
+            processEvent(reader.nextEvent());
+          }
+          writer.flush();
+          finished = !reader.hasNext();
+        }
+      } catch (XMLStreamException | RuntimeException e) {
+        handleReadError(e);
+      }
+    }
+
+    private void handleReadError(Exception exception) {
+      finished = true;
+      reportItemConsumer.accept(new ValidationReportItem(null, null, null,
+          "Could not read the XML content: " + exception.getMessage(),
+          ValidationIssueSeverity.ERROR));
+    }
+
+    private void processEvent(XMLEvent nextEvent) throws XMLStreamException {
+      if (nextEvent.isStartElement()) {
+        final StartElement element = nextEvent.asStartElement();
+        if (currentDepth > 1 && reportNestedElements) {
+          verifyNestedElement(element);
+        }
+        currentDepth++;
+        writer.add(eventFactory.createStartElement(
+            element.getName().getPrefix(), element.getName().getNamespaceURI(),
+            element.getName().getLocalPart(), stripProvenanceAttributes(element.getAttributes()),
+            element.getNamespaces(), element.getNamespaceContext()));
+      } else {
+        if (nextEvent.isEndElement()) {
+          currentDepth--;
+        }
+        writer.add(nextEvent);
+      }
+    }
+
+    private static Iterator<Attribute> stripProvenanceAttributes(Iterator<Attribute> attributes) {
+      final Iterable<Attribute> attributesIterable = () -> Optional.ofNullable(attributes)
+          .orElse(Collections.emptyIterator());
+      return StreamSupport.stream(attributesIterable.spliterator(), false).filter(attribute -> {
+        final QName name = attribute.getName();
+        return !name.getNamespaceURI().equals(EDM_NAMESPACE) ||
+            !Set.of("wasGeneratedBy", "confidenceLevel").contains(name.getLocalPart());
+      }).iterator();
+    }
+
+    private void verifyNestedElement(StartElement element) {
+      final String fullElementName =
+          element.getName().getNamespaceURI() + element.getName().getLocalPart();
+      final String elementId = Optional.ofNullable(element.getAttributeByName(
+              new QName("http://www.w3.org/1999/02/22-rdf-syntax-ns#", "about")))
+          .map(Attribute::getValue).orElse(null);
+      if (TOP_LEVEL_ELEMENTS.contains(fullElementName)) {
+        reportItemConsumer.accept(new ValidationReportItem(elementId, null, null,
+            "XML Elements of type " + fullElementName
+                + " must be top-level elements and may not be nested inside other elements.",
+            ValidationIssueSeverity.ERROR));
+      }
+    }
+  }
+
+  /**
+   * A byte array output stream that gives access to its internal buffer (without copying).
+   */
+  private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+
+    byte[] getBytes() {
+      return buf;
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package eu.europeana.metis.edm.ext.schema.benchmarks;
+
+import eu.europeana.metis.common.rdf.RdfRepresentation;
+import java.util.Arrays;
+import org.apache.jena.riot.Lang;
+
+/**
+ * The RDF formats in which the benchmarks can be run.
+ */
+public enum BenchmarkFormat {
+
+  XML(Lang.RDFXML),
+  TURTLE(Lang.TURTLE),
+  NTRIPLES(Lang.NTRIPLES);
+
+  private final Lang lang;
+
+  BenchmarkFormat(Lang lang) {
+    this.lang = lang;
+  }
+
+  /**
+   * @return The Jena language for this format.
+   */
+  public Lang getLang() {
+    return lang;
+  }
+
+  /**
+   * @return The representation for this format, to pass on to the code under test.
+   */
+  public RdfRepresentation getRepresentation() {
+    if (this == XML) {
+      return RdfRepresentation.XML;
+    }
+    return Arrays.stream(RdfRepresentation.values())
+        .filter(representation -> lang.equals(representation.getLang())).findFirst()
+        .orElseThrow(() -> new IllegalStateException("No representation for " + lang + "."));
+  }
+}
@@ -0,0 +1,360 @@
+package eu.europeana.metis.edm.ext.schema.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFParserBuilder;
+import org.apache.jena.sparql.graph.GraphFactory;
+
+/**
+ * <p>This class generates synthetic EDM-external records for benchmarking. The generation is
+ * deterministic: the same configuration and record index always produce the same record. Records
+ * consist of an <code>ore:Aggregation</code>, an <code>edm:ProvidedCHO</code>, a number of
+ * <code>edm:WebResource</code> objects, a number of contextual entities and optionally a chain of
+ * blank nodes, depending on the {@link RecordGeneratorConfig}.
+ * </p>
+ * <p>Records can be generated in RDF/XML (including the non-RDF provenance attributes), Turtle
+ * and N-Triples. Multiple records can be combined in one dataset, e.g. for segmentation.
+ * </p>
+ */
+public class RecordGenerator {
+
+  private static final String RECORD_BASE_URL = "http://data.example.org/record/";
+  private static final String BLANK_NODE_PREFIX = "_:";
+  private static final String RIGHTS_STATEMENT =
+      "http://creativecommons.org/publicdomain/zero/1.0/";
+
+  private static final Map<String, String> NAMESPACES = createNamespaces();
+
+  private static final String[] WORDS = {"portrait", "landscape", "letter", "manuscript", "map",
+      "photograph", "painting", "drawing", "sculpture", "coin", "poster", "book", "newspaper",
+      "recording", "film", "textile", "ceramic", "instrument", "garden", "harbour", "river",
+      "mountain", "village", "city", "church", "castle", "market", "festival", "school", "bridge"};
+
+  private static final String[] LANGUAGES = {"en", "nl", "de", "fr", "it", "es"};
+
+  private final RecordGeneratorConfig config;
+
+  private record GeneratedProperty(String name, String value, boolean reference, String language,
+                                   boolean withProvenance) {
+
+  }
+
+  /**
+   * A generated resource. The IRI is a blank node ID if it starts with <code>_:</code>.
+   */
+  private record GeneratedResource(String type, String iri, List<GeneratedProperty> properties) {
+
+  }
+
+  /**
+   * The types of contextual entities, with the properties used for referencing them from the
+   * <code>edm:ProvidedCHO</code> and for chaining them together.
+   */
+  private enum EntityType {
+    AGENT("edm:Agent", "dc:creator", "dcterms:hasPart"),
+    CONCEPT("skos:Concept", "dc:subject", "skos:narrower"),
+    PLACE("edm:Place", "dcterms:spatial", "dcterms:hasPart"),
+    TIME_SPAN("edm:TimeSpan", "dcterms:temporal", "dcterms:hasPart");
+
+    private final String type;
+    private final String referenceProperty;
+    private final String chainProperty;
+
+    EntityType(String type, String referenceProperty, String chainProperty) {
+      this.type = type;
+      this.referenceProperty = referenceProperty;
+      this.chainProperty = chainProperty;
+    }
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param config The configuration for the records to generate.
+   */
+  public RecordGenerator(RecordGeneratorConfig config) {
+    this.config = config;
+  }
+
+  /**
+   * Returns the record ID (the IRI of the <code>edm:ProvidedCHO</code>) of a generated record.
+   *
+   * @param recordIndex The index of the record.
+   * @return The record ID.
+   */
+  public static String recordId(int recordIndex) {
+    return RECORD_BASE_URL + recordIndex + "/cho";
+  }
+
+  /**
+   * Generates one record.
+   *
+   * @param recordIndex The index of the record. Different indices give different records.
+   * @param format      The format in which to generate the record.
+   * @return The record.
+   */
+  public String generateRecord(int recordIndex, BenchmarkFormat format) {
+    return generateDataset(recordIndex, 1, format);
+  }
+
+  /**
+   * Generates a dataset of multiple records, with indices starting at 0.
+   *
+   * @param recordCount The number of records.
+   * @param format      The format in which to generate the dataset.
+   * @return The dataset.
+   */
+  public String generateDataset(int recordCount, BenchmarkFormat format) {
+    return generateDataset(0, recordCount, format);
+  }
+
+  private String generateDataset(int firstRecordIndex, int recordCount, BenchmarkFormat format) {
+    final List<GeneratedResource> resources = new ArrayList<>();
+    for (int i = firstRecordIndex; i < firstRecordIndex + recordCount; i++) {
+      resources.addAll(createRecord(i));
+    }
+    return switch (format) {
+      case XML -> writeXml(resources);
+      case TURTLE -> writeTurtle(resources);
+      case NTRIPLES -> convert(writeTurtle(resources), Lang.TURTLE, Lang.NTRIPLES);
+    };
+  }
+
+  private List<GeneratedResource> createRecord(int recordIndex) {
+    final Random random = new Random(config.seed() * 31 + recordIndex);
+    final String base = RECORD_BASE_URL + recordIndex + "/";
+    final List<GeneratedResource> result = new ArrayList<>();
+
+    // The aggregation and the provided CHO.
+    final GeneratedResource aggregation = new GeneratedResource("ore:Aggregation",
+        base + "aggregation", new ArrayList<>());
+    final GeneratedResource providedCho = new GeneratedResource("edm:ProvidedCHO",
+        recordId(recordIndex), new ArrayList<>());
+    result.add(aggregation);
+    result.add(providedCho);
+    aggregation.properties().add(reference("edm:aggregatedCHO", providedCho.iri()));
+    aggregation.properties().add(literal("edm:dataProvider", "Data provider " + recordIndex % 7));
+    aggregation.properties().add(literal("edm:provider", "Aggregator " + recordIndex % 3));
+    aggregation.properties().add(reference("edm:rights", RIGHTS_STATEMENT));
+    providedCho.properties().add(languageLiteral("dc:title", words(random, 4), random));
+    providedCho.properties().add(languageLiteral("dc:description", words(random, 30), random));
+    providedCho.properties().add(literal("dc:identifier", "ID-" + recordIndex));
+    providedCho.properties().add(literal("edm:type", "IMAGE"));
+    for (int i = 0; i < config.provenanceAttributeCount(); i++) {
+      providedCho.properties().add(new GeneratedProperty("dc:subject", words(random, 2), false,
+          null, true));
+    }
+
+    // The web resources.
+    for (int i = 0; i < config.webResourceCount(); i++) {
+      final GeneratedResource webResource = new GeneratedResource("edm:WebResource",
+          base + "media/" + i + ".jpg", new ArrayList<>());
+      webResource.properties().add(literal("dc:format", "image/jpeg"));
+      webResource.properties().add(literal("dcterms:extent", (random.nextInt(5000) + 1) + " KB"));
+      webResource.properties().add(reference("edm:rights", RIGHTS_STATEMENT));
+      aggregation.properties().add(reference(i == 0 ? "edm:isShownBy" : "edm:hasView",
+          webResource.iri()));
+      result.add(webResource);
+    }
+
+    // The contextual entities. They are chained per type: only the first of each chain is
+    // referenced from the provided CHO.
+    final EntityType[] entityTypes = EntityType.values();
+    for (int i = 0; i < config.contextualEntityCount(); i++) {
+      final EntityType entityType = entityTypes[i % entityTypes.length];
+      final int positionInType = i / entityTypes.length;
+      final GeneratedResource entity = new GeneratedResource(entityType.type,
+          base + "entity/" + i, new ArrayList<>());
+      entity.properties().add(languageLiteral("skos:prefLabel", words(random, 2), random));
+      switch (entityType) {
+        case PLACE -> {
+          entity.properties().add(literal("wgs84_pos:lat", latOrLong(random, 90)));
+          entity.properties().add(literal("wgs84_pos:long", latOrLong(random, 180)));
+        }
+        case TIME_SPAN -> {
+          final int begin = 1000 + random.nextInt(1000);
+          entity.properties().add(literal("edm:begin", String.valueOf(begin)));
+          entity.properties().add(literal("edm:end", String.valueOf(begin + random.nextInt(50))));
+        }
+        default -> {
+          // No extra properties.
+        }
+      }
+      if (positionInType % config.nestingDepth() == 0) {
+        providedCho.properties().add(reference(entityType.referenceProperty, entity.iri()));
+      }
+      final int nextInChain = i + entityTypes.length;
+      if (positionInType % config.nestingDepth() != config.nestingDepth() - 1
+          && nextInChain < config.contextualEntityCount()) {
+        entity.properties()
+            .add(reference(entityType.chainProperty, base + "entity/" + nextInChain));
+      }
+      result.add(entity);
+    }
+
+    // The blank node chain: each concept references the next one.
+    for (int i = 0; i < config.blankNodeChainLength(); i++) {
+      final GeneratedResource blankNode = new GeneratedResource("skos:Concept",
+          blankNodeId(recordIndex, i), new ArrayList<>());
+      blankNode.properties().add(languageLiteral("skos:prefLabel", words(random, 2), random));
+      if (i == 0) {
+        providedCho.properties().add(reference("dc:subject", blankNode.iri()));
+      }
+      if (i + 1 < config.blankNodeChainLength()) {
+        blankNode.properties().add(reference("skos:narrower", blankNodeId(recordIndex, i + 1)));
+      }
+      result.add(blankNode);
+    }
+
+    // The orphans.
+    for (int i = 0; i < config.orphanCount(); i++) {
+      final GeneratedResource orphan = new GeneratedResource("edm:Agent", base + "orphan/" + i,
+          new ArrayList<>());
+      orphan.properties().add(languageLiteral("skos:prefLabel", words(random, 2), random));
+      result.add(orphan);
+    }
+
+    // Make the record invalid if needed: an unsupported property (violating a closed shape) and
+    // a value violating a pattern.
+    if (!config.valid()) {
+      providedCho.properties().add(reference("edm:isShownBy", base + "media/0.jpg"));
+      aggregation.properties().add(literal("edm:ugc", "yes"));
+    }
+    return result;
+  }
+
+  private static String blankNodeId(int recordIndex, int index) {
+    return BLANK_NODE_PREFIX + "r" + recordIndex + "c" + index;
+  }
+
+  private static boolean isBlankNode(String id) {
+    return id.startsWith(BLANK_NODE_PREFIX);
+  }
+
+  private static String xmlNodeAttribute(String id, String iriAttribute) {
+    return isBlankNode(id) ? " rdf:nodeID=\"" + id.substring(BLANK_NODE_PREFIX.length()) + '"'
+        : " " + iriAttribute + "=\"" + escapeXml(id) + '"';
+  }
+
+  private static String turtleNode(String id) {
+    return isBlankNode(id) ? id : "<" + id + ">";
+  }
+
+  private static GeneratedProperty literal(String name, String value) {
+    return new GeneratedProperty(name, value, false, null, false);
+  }
+
+  private static GeneratedProperty languageLiteral(String name, String value, Random random) {
+    return new GeneratedProperty(name, value, false, LANGUAGES[random.nextInt(LANGUAGES.length)],
+        false);
+  }
+
+  private static GeneratedProperty reference(String name, String iri) {
+    return new GeneratedProperty(name, iri, true, null, false);
+  }
+
+  private static String words(Random random, int count) {
+    final StringBuilder result = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        result.append(' ');
+      }
+      result.append(WORDS[random.nextInt(WORDS.length)]);
+    }
+    return result.toString();
+  }
+
+  private static String latOrLong(Random random, int range) {
+    return String.format(Locale.ROOT, "%.4f", (random.nextDouble() * 2 - 1) * range);
+  }
+
+  private static String writeXml(List<GeneratedResource> resources) {
+    final StringBuilder result = new StringBuilder();
+    result.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<rdf:RDF");
+    NAMESPACES.forEach((prefix, namespace) -> result.append("\n    xmlns:").append(prefix)
+        .append("=\"").append(namespace).append('"'));
+    result.append(">\n");
+    for (GeneratedResource resource : resources) {
+      result.append("  <").append(resource.type())
+          .append(xmlNodeAttribute(resource.iri(), "rdf:about")).append(">\n");
+      for (GeneratedProperty property : resource.properties()) {
+        result.append("    <").append(property.name());
+        if (property.reference()) {
+          result.append(xmlNodeAttribute(property.value(), "rdf:resource")).append("/>\n");
+          continue;
+        }
+        if (property.language() != null) {
+          result.append(" xml:lang=\"").append(property.language()).append('"');
+        }
+        if (property.withProvenance()) {
+          result.append(" edm:wasGeneratedBy=\"SoftwareAgent\" edm:confidenceLevel=\"0.8\"");
+        }
+        result.append('>').append(escapeXml(property.value())).append("</")
+            .append(property.name()).append(">\n");
+      }
+      result.append("  </").append(resource.type()).append(">\n");
+    }
+    result.append("</rdf:RDF>\n");
+    return result.toString();
+  }
+
+  private static String writeTurtle(List<GeneratedResource> resources) {
+    final StringBuilder result = new StringBuilder();
+    NAMESPACES.forEach((prefix, namespace) -> result.append("@prefix ").append(prefix)
+        .append(": <").append(namespace).append("> .\n"));
+    for (GeneratedResource resource : resources) {
+      result.append('\n').append(turtleNode(resource.iri())).append(" a ")
+          .append(resource.type());
+      for (GeneratedProperty property : resource.properties()) {
+        result.append(" ;\n    ").append(property.name()).append(' ');
+        if (property.reference()) {
+          result.append(turtleNode(property.value()));
+        } else {
+          result.append('"').append(escapeTurtle(property.value())).append('"');
+          if (property.language() != null) {
+            result.append('@').append(property.language());
+          }
+        }
+      }
+      result.append(" .\n");
+    }
+    return result.toString();
+  }
+
+  private static String convert(String data, Lang sourceLang, Lang targetLang) {
+    final Graph graph = GraphFactory.createDefaultGraph();
+    RDFParserBuilder.create().fromString(data).lang(sourceLang).parse(graph);
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+    RDFDataMgr.write(result, graph, targetLang);
+    return result.toString(StandardCharsets.UTF_8);
+  }
+
+  private static String escapeXml(String value) {
+    return value.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;");
+  }
+
+  private static String escapeTurtle(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+
+  private static Map<String, String> createNamespaces() {
+    final Map<String, String> namespaces = new LinkedHashMap<>();
+    namespaces.put("rdf", "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
+    namespaces.put("dc", "http://purl.org/dc/elements/1.1/");
+    namespaces.put("dcterms", "http://purl.org/dc/terms/");
+    namespaces.put("edm", "http://www.europeana.eu/schemas/edm/");
+    namespaces.put("ore", "http://www.openarchives.org/ore/terms/");
+    namespaces.put("skos", "http://www.w3.org/2004/02/skos/core#");
+    namespaces.put("wgs84_pos", "http://www.w3.org/2003/01/geo/wgs84_pos#");
+    return namespaces;
+  }
+}
@@ -0,0 +1,119 @@
+package eu.europeana.metis.edm.ext.schema.benchmarks;
+
+/**
+ * The configuration of the {@link RecordGenerator}, determining the shape and size of the
+ * generated records.
+ *
+ * @param webResourceCount         The number of <code>edm:WebResource</code> objects per record.
+ * @param contextualEntityCount    The number of contextual entities (agents, concepts, places and
+ *                                 time spans, in rotation) per record.
+ * @param nestingDepth             The length of the chains in which contextual entities of the
+ *                                 same type reference each other (e.g. through
+ *                                 <code>dcterms:hasPart</code>). Only the first entity of each
+ *                                 chain is referenced from the <code>edm:ProvidedCHO</code>. A
+ *                                 value of 1 means that all entities are referenced directly.
+ * @param orphanCount              The number of resources per record that are not referenced from
+ *                                 the record (and will trigger a warning).
+ * @param provenanceAttributeCount The number of literal properties per record that carry the
+ *                                 (non-RDF) provenance attributes. Only applies to RDF/XML.
+ * @param blankNodeChainLength     The length of a chain of blank nodes (concepts referencing each
+ *                                 other through <code>skos:narrower</code>) that is referenced
+ *                                 from the <code>edm:ProvidedCHO</code>. A value of 0 means that
+ *                                 the record contains no blank nodes.
+ * @param valid                    Whether the records should be valid. Invalid records violate
+ *                                 several SHACL constraints.
+ * @param seed                     The seed of the generator: the same seed and configuration
+ *                                 always produce the same records.
+ */
+public record RecordGeneratorConfig(int webResourceCount, int contextualEntityCount,
+                                    int nestingDepth, int orphanCount,
+                                    int provenanceAttributeCount, int blankNodeChainLength,
+                                    boolean valid, long seed) {
+
+  private static final long DEFAULT_SEED = 20240601L;
+
+  /**
+   * Predefined record sizes.
+   */
+  public enum RecordSize {
+
+    /**
+     * A minimal record with one web resource and a few contextual entities.
+     */
+    SMALL(1, 4, 1, 0, 2),
+
+    /**
+     * A typical record with a handful of web resources and contextual entities.
+     */
+    MEDIUM(5, 20, 2, 1, 10),
+
+    /**
+     * A large record (e.g. a digitized book), with many resources and some orphans.
+     */
+    LARGE(200, 400, 4, 20, 100),
+
+    /**
+     * A record with very many web resources (e.g. a digitized archive box) and few other resources.
+     */
+    MANY_WEB_RESOURCES(2000, 4, 1, 0, 2);
+
+    private final int webResourceCount;
+    private final int contextualEntityCount;
+    private final int nestingDepth;
+    private final int orphanCount;
+    private final int provenanceAttributeCount;
+
+    RecordSize(int webResourceCount, int contextualEntityCount, int nestingDepth, int orphanCount,
+        int provenanceAttributeCount) {
+      this.webResourceCount = webResourceCount;
+      this.contextualEntityCount = contextualEntityCount;
+      this.nestingDepth = nestingDepth;
+      this.orphanCount = orphanCount;
+      this.provenanceAttributeCount = provenanceAttributeCount;
+    }
+  }
+
+  /**
+   * Constructor.
+   */
+  public RecordGeneratorConfig {
+    if (webResourceCount < 1 || contextualEntityCount < 0 || nestingDepth < 1 || orphanCount < 0
+        || provenanceAttributeCount < 0 || blankNodeChainLength < 0) {
+      throw new IllegalArgumentException("Invalid record generator configuration.");
+    }
+  }
+
+  /**
+   * Creates a configuration for one of the predefined record sizes.
+   *
+   * @param size  The record size.
+   * @param valid Whether the records should be valid.
+   * @return The configuration.
+   */
+  public static RecordGeneratorConfig of(RecordSize size, boolean valid) {
+    return new RecordGeneratorConfig(size.webResourceCount, size.contextualEntityCount,
+        size.nestingDepth, size.orphanCount, size.provenanceAttributeCount, 0, valid,
+        DEFAULT_SEED);
+  }
+
+  /**
+   * Creates a copy of this configuration with a different blank node chain length.
+   *
+   * @param length The length of the blank node chain.
+   * @return The configuration.
+   */
+  public RecordGeneratorConfig withBlankNodeChainLength(int length) {
+    return new RecordGeneratorConfig(webResourceCount, contextualEntityCount, nestingDepth,
+        orphanCount, provenanceAttributeCount, length, valid, seed);
+  }
+
+  /**
+   * Creates a copy of this configuration without provenance attributes.
+   *
+   * @return The configuration.
+   */
+  public RecordGeneratorConfig withoutProvenanceAttributes() {
+    return new RecordGeneratorConfig(webResourceCount, contextualEntityCount, nestingDepth,
+        orphanCount, 0, blankNodeChainLength, valid, seed);
+  }
+}
@@ -0,0 +1,74 @@
+package eu.europeana.metis.edm.ext.schema.benchmarks;
+
+import eu.europeana.metis.common.rdf.RdfRepresentation;
+import eu.europeana.metis.edm.ext.schema.DataParseException;
+import eu.europeana.metis.edm.ext.schema.EdmExternalRecordIdExtractor;
+import eu.europeana.metis.edm.ext.schema.benchmarks.RecordGeneratorConfig.RecordSize;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link EdmExternalRecordIdExtractor}: the extraction of record IDs from
+ * datasets of multiple records, both from a stream (full parsing) and from a file (fast scan where
+ * possible).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RecordIdExtractorBenchmark {
+
+  @Param({"XML", "TURTLE", "NTRIPLES"})
+  public BenchmarkFormat format;
+
+  @Param({"100", "1000"})
+  public int recordCount;
+
+  private RdfRepresentation representation;
+  private byte[] dataset;
+  private Path datasetFile;
+
+  @Setup
+  public void setUp() throws IOException {
+    representation = format.getRepresentation();
+    dataset = new RecordGenerator(RecordGeneratorConfig.of(RecordSize.MEDIUM, true))
+        .generateDataset(recordCount, format).getBytes(StandardCharsets.UTF_8);
+    datasetFile = Files.createTempFile("record-id-benchmark-", ".dat");
+    Files.write(datasetFile, dataset);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(datasetFile);
+  }
+
+  @Benchmark
+  public Set<String> extractFromStream() throws DataParseException {
+    return EdmExternalRecordIdExtractor.extractRecordIds(new ByteArrayInputStream(dataset),
+        representation);
+  }
+
+  @Benchmark
+  public Set<String> extractFromFile() throws DataParseException, IOException {
+    return EdmExternalRecordIdExtractor.extractRecordIds(datasetFile, representation);
+  }
+}
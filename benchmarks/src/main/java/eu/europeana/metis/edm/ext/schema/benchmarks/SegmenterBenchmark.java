@@ -0,0 +1,93 @@
+package eu.europeana.metis.edm.ext.schema.benchmarks;
+
+import eu.europeana.metis.common.rdf.RdfRepresentation;
+import eu.europeana.metis.edm.ext.schema.EdmExternalSegmenter;
+import eu.europeana.metis.edm.ext.schema.EdmExternalSegmenter.RecordConsumer;
+import eu.europeana.metis.edm.ext.schema.EdmExternalSegmenter.RecordConsumer.SegmentationResult;
+import eu.europeana.metis.edm.ext.schema.EdmExternalSegmenter.StorageMode;
+import eu.europeana.metis.edm.ext.schema.benchmarks.RecordGeneratorConfig.RecordSize;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link EdmExternalSegmenter}: loading a dataset of multiple records and
+ * segmenting it into individual records, which are serialized (to a discarding stream).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SegmenterBenchmark {
+
+  @Param({"XML", "TURTLE"})
+  public BenchmarkFormat format;
+
+  @Param({"100", "1000"})
+  public int recordCount;
+
+  @Param({"IN_MEMORY", "DISK"})
+  public StorageMode storageMode;
+
+  @Param({"1", "4"})
+  public int parallelism;
+
+  private RdfRepresentation representation;
+  private byte[] dataset;
+  private ExecutorService executor;
+
+  @Setup
+  public void setUp() {
+    representation = format.getRepresentation();
+
+    // The segmenter reads the data as RDF, so the provenance attributes can not be present.
+    final RecordGeneratorConfig configWithoutProvenance =
+        RecordGeneratorConfig.of(RecordSize.MEDIUM, true).withoutProvenanceAttributes();
+    dataset = new RecordGenerator(configWithoutProvenance).generateDataset(recordCount, format)
+        .getBytes(StandardCharsets.UTF_8);
+    executor = Executors.newFixedThreadPool(parallelism);
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Benchmark
+  public int loadAndSegment() throws IOException, InterruptedException {
+    final AtomicInteger segmentedRecords = new AtomicInteger();
+    final RecordConsumer<IOException> consumer = record -> {
+      record.write(OutputStream.nullOutputStream(), representation);
+      segmentedRecords.incrementAndGet();
+      return SegmentationResult.CONTINUE;
+    };
+    try (EdmExternalSegmenter segmenter = new EdmExternalSegmenter(false, storageMode)) {
+      segmenter.addData(new ByteArrayInputStream(dataset), representation);
+      if (parallelism == 1) {
+        segmenter.segment(consumer);
+      } else {
+        segmenter.segment(consumer, executor, parallelism);
+      }
+    }
+    return segmentedRecords.get();
+  }
+}
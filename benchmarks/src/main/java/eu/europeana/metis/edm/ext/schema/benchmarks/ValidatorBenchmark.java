@@ -0,0 +1,84 @@
+package eu.europeana.metis.edm.ext.schema.benchmarks;
+
+import eu.europeana.metis.common.rdf.RdfRepresentation;
+import eu.europeana.metis.edm.ext.schema.EdmExternalValidator;
+import eu.europeana.metis.edm.ext.schema.ValidationReport;
+import eu.europeana.metis.edm.ext.schema.benchmarks.RecordGeneratorConfig.RecordSize;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.RDFParserBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link EdmExternalValidator}: the validation of single records, both from
+ * serialized data and from an already parsed model. The large records also exercise the orphan
+ * detection, as they contain unreferenced resources. The records with many web resources and the
+ * records with a (long) blank node chain exercise the reachability pass of the orphan detection.
+ * See <code>OrphanDetectionBenchmark</code> for a comparison of that pass with the SPARQL query it
+ * replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ValidatorBenchmark {
+
+  @Param({"XML", "TURTLE"})
+  public BenchmarkFormat format;
+
+  @Param({"SMALL", "MEDIUM", "LARGE", "MANY_WEB_RESOURCES"})
+  public RecordSize size;
+
+  @Param({"0", "500"})
+  public int blankNodeChainLength;
+
+  @Param({"true", "false"})
+  public boolean valid;
+
+  private EdmExternalValidator validator;
+  private RdfRepresentation representation;
+  private byte[] record;
+  private Model recordModel;
+
+  @Setup
+  public void setUp() {
+    validator = new EdmExternalValidator();
+    representation = format.getRepresentation();
+    final RecordGenerator generator = new RecordGenerator(
+        RecordGeneratorConfig.of(size, valid).withBlankNodeChainLength(blankNodeChainLength));
+    record = generator.generateRecord(0, format).getBytes(StandardCharsets.UTF_8);
+
+    // The model is parsed from Turtle: the RDF/XML may contain the non-RDF provenance attributes.
+    recordModel = ModelFactory.createDefaultModel();
+    RDFParserBuilder.create().fromString(generator.generateRecord(0, BenchmarkFormat.TURTLE))
+        .lang(BenchmarkFormat.TURTLE.getLang()).parse(recordModel.getGraph());
+
+    // Make sure that the shapes are loaded before measuring.
+    validator.validateSingleRecord(new ByteArrayInputStream(record), representation);
+  }
+
+  @Benchmark
+  public ValidationReport validateSerializedRecord() {
+    return validator.validateSingleRecord(new ByteArrayInputStream(record), representation);
+  }
+
+  @Benchmark
+  public ValidationReport validateParsedRecord() {
+    return validator.validateSingleRecord(recordModel);
+  }
+}
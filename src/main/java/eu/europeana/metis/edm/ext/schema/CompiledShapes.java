@@ -0,0 +1,425 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.shacl.Shapes;
+import org.apache.jena.shacl.parser.PropertyShape;
+import org.apache.jena.shacl.parser.Shape;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+
+/**
+ * <p>This class compiles the property shapes that consist of common, simple constraints into
+ * specialized checks, that are much cheaper to evaluate than Jena's generic SHACL engine. A
+ * compiled check can only determine that a focus node conforms to a property shape: in that case
+ * Jena would not report anything for it, and the evaluation of the property shape can be skipped.
+ * In all other cases (i.e. the check fails, or the property shape could not be compiled), the
+ * property shape is evaluated by Jena as usual, so that the report is always identical to Jena's.
+ * </p>
+ * <p>The supported constraints are <code>sh:datatype</code>, <code>sh:nodeKind</code>,
+ * <code>sh:minCount</code>, <code>sh:maxCount</code>, <code>sh:pattern</code> (without flags),
+ * <code>sh:class</code>, <code>sh:in</code> and (recursively) <code>sh:node</code>,
+ * <code>sh:or</code> and <code>sh:not</code>, on shapes with a simple (predicate) path. Shapes
+ * with any other SHACL parameter are not compiled. Non-validating parameters (such as
+ * <code>sh:message</code> and <code>sh:severity</code>) do not affect compilation, as they only
+ * affect the report of a shape that does not conform.
+ * </p>
+ * <p>If the system property {@value #DISABLE_COMPILED_SHAPES_PROPERTY} is set to
+ * <code>true</code>, no shapes are compiled and Jena evaluates all shapes.
+ * </p>
+ */
+final class CompiledShapes {
+
+  static final String DISABLE_COMPILED_SHAPES_PROPERTY =
+      "eu.europeana.metis.edm.ext.schema.disableCompiledShapes";
+
+  static final String SHACL_NAMESPACE = "http://www.w3.org/ns/shacl#";
+
+  private static final Node SH_PATH = shaclNode("path");
+  private static final Node SH_DATATYPE = shaclNode("datatype");
+  private static final Node SH_NODE_KIND = shaclNode("nodeKind");
+  private static final Node SH_MIN_COUNT = shaclNode("minCount");
+  private static final Node SH_MAX_COUNT = shaclNode("maxCount");
+  private static final Node SH_PATTERN = shaclNode("pattern");
+  private static final Node SH_CLASS = shaclNode("class");
+  private static final Node SH_IN = shaclNode("in");
+  private static final Node SH_NODE = shaclNode("node");
+  private static final Node SH_OR = shaclNode("or");
+  private static final Node SH_NOT = shaclNode("not");
+
+  private static final Node SH_IRI = shaclNode("IRI");
+  private static final Node SH_LITERAL = shaclNode("Literal");
+  private static final Node SH_BLANK_NODE = shaclNode("BlankNode");
+  private static final Node SH_BLANK_NODE_OR_IRI = shaclNode("BlankNodeOrIRI");
+  private static final Node SH_BLANK_NODE_OR_LITERAL = shaclNode("BlankNodeOrLiteral");
+  private static final Node SH_IRI_OR_LITERAL = shaclNode("IRIOrLiteral");
+
+  // The SHACL parameters that we support, including those that do not affect conformance.
+  private static final Set<Node> SUPPORTED_PARAMETERS = Set.of(SH_PATH, SH_DATATYPE, SH_NODE_KIND,
+      SH_MIN_COUNT, SH_MAX_COUNT, SH_PATTERN, SH_CLASS, SH_IN, SH_NODE, SH_OR, SH_NOT,
+      shaclNode("message"), shaclNode("severity"), shaclNode("name"), shaclNode("description"),
+      shaclNode("order"), shaclNode("group"), shaclNode("targetClass"), shaclNode("targetNode"),
+      shaclNode("targetSubjectsOf"), shaclNode("targetObjectsOf"));
+
+  private final Graph shapesGraph;
+  private final Map<Node, Check> checksByShapeNode = new HashMap<>();
+  private final Map<Node, Check> propertyShapeChecks = new HashMap<>();
+
+  private CompiledShapes(Shapes shapes, boolean disabled) {
+    this.shapesGraph = shapes.getGraph();
+    if (!disabled) {
+      for (Shape shape : shapes.getTargetShapes()) {
+        for (PropertyShape propertyShape : shape.getPropertyShapes()) {
+          if (propertyShape.getPropertyShapes().isEmpty()) {
+            final Check check = compileShape(propertyShape.getShapeNode(), new HashSet<>());
+            if (check != null) {
+              propertyShapeChecks.put(propertyShape.getShapeNode(), check);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  static Node shaclNode(String localName) {
+    return NodeFactory.createURI(SHACL_NAMESPACE + localName);
+  }
+
+  /**
+   * Gets the one instance of this class, for the validation shapes. This method does not lock, and
+   * the instance can be used concurrently by multiple validations.
+   *
+   * @return Instance of this class.
+   */
+  static CompiledShapes get() {
+    return Holder.INSTANCE.get("the compiled shapes");
+  }
+
+  /**
+   * Creates a new instance of this class, regardless of the system property
+   * {@value #DISABLE_COMPILED_SHAPES_PROPERTY}. This is meant for verifying the compiled checks
+   * against Jena: for validation, use {@link #get()}.
+   *
+   * @param shapes   The shapes to compile.
+   * @param disabled Whether to disable the compilation (so that Jena evaluates all shapes).
+   * @return The instance.
+   */
+  static CompiledShapes create(Shapes shapes, boolean disabled) {
+    return new CompiledShapes(shapes, disabled);
+  }
+
+  /**
+   * @return Whether any shapes are compiled.
+   */
+  boolean isEnabled() {
+    return !propertyShapeChecks.isEmpty();
+  }
+
+  /**
+   * Determines whether a focus node is known to conform to a property shape.
+   *
+   * @param propertyShape The property shape.
+   * @param data          The data graph.
+   * @param focusNode     The focus node.
+   * @return Whether the focus node is known to conform. If false, the focus node may or may not
+   * conform (and the property shape needs to be evaluated by Jena).
+   */
+  boolean conforms(PropertyShape propertyShape, Graph data, Node focusNode) {
+    final Check check = propertyShapeChecks.get(propertyShape.getShapeNode());
+    return check != null && check.test(data, focusNode);
+  }
+
+  /**
+   * Compiles a shape into a check that a node conforms to the shape.
+   *
+   * @param shapeNode        The shape node.
+   * @param shapesInProgress The shapes that are being compiled (to detect recursion).
+   * @return The check, or null if the shape could not be compiled.
+   */
+  private Check compileShape(Node shapeNode, Set<Node> shapesInProgress) {
+    if (checksByShapeNode.containsKey(shapeNode)) {
+      return checksByShapeNode.get(shapeNode);
+    }
+    if (!shapesInProgress.add(shapeNode)) {
+      return null;
+    }
+    final Check result = compileShapeParameters(shapeNode, shapesInProgress);
+    shapesInProgress.remove(shapeNode);
+    checksByShapeNode.put(shapeNode, result);
+    return result;
+  }
+
+  private Check compileShapeParameters(Node shapeNode, Set<Node> shapesInProgress) {
+
+    // Check that all parameters are supported.
+    final List<Triple> parameters = shapesGraph.find(shapeNode, Node.ANY, Node.ANY).toList();
+    for (Triple parameter : parameters) {
+      if (parameter.getPredicate().getURI().startsWith(SHACL_NAMESPACE)
+          && !SUPPORTED_PARAMETERS.contains(parameter.getPredicate())) {
+        return null;
+      }
+    }
+
+    // Compile the constraints on the value nodes.
+    final List<Check> valueChecks = new ArrayList<>();
+    Node path = null;
+    Integer minCount = null;
+    Integer maxCount = null;
+    for (Triple parameter : parameters) {
+      final Node predicate = parameter.getPredicate();
+      final Node object = parameter.getObject();
+      final Check check;
+      if (SH_PATH.equals(predicate)) {
+        if (path != null || !object.isURI()) {
+          return null;
+        }
+        path = object;
+        continue;
+      } else if (SH_MIN_COUNT.equals(predicate) || SH_MAX_COUNT.equals(predicate)) {
+        final Integer count = getInteger(object);
+        if (count == null || (SH_MIN_COUNT.equals(predicate) ? minCount : maxCount) != null) {
+          return null;
+        }
+        if (SH_MIN_COUNT.equals(predicate)) {
+          minCount = count;
+        } else {
+          maxCount = count;
+        }
+        continue;
+      } else if (SH_DATATYPE.equals(predicate)) {
+        check = compileDatatype(object);
+      } else if (SH_NODE_KIND.equals(predicate)) {
+        check = compileNodeKind(object);
+      } else if (SH_PATTERN.equals(predicate)) {
+        check = compilePattern(object);
+      } else if (SH_CLASS.equals(predicate)) {
+        check = object.isURI() ? new Check((data, node) -> hasClass(data, node, object), true)
+            : null;
+      } else if (SH_IN.equals(predicate)) {
+        final List<Node> members = getListMembers(shapesGraph, object);
+        check = members == null ? null : new Check((data, node) -> members.contains(node), true);
+      } else if (SH_NODE.equals(predicate)) {
+        check = compileShape(object, shapesInProgress);
+      } else if (SH_OR.equals(predicate)) {
+        check = compileOr(object, shapesInProgress);
+      } else if (SH_NOT.equals(predicate)) {
+        final Check otherCheck = compileShape(object, shapesInProgress);
+        check = otherCheck == null || !otherCheck.exact() ? null
+            : new Check((data, node) -> !otherCheck.test(data, node), true);
+      } else {
+        continue;
+      }
+      if (check == null) {
+        return null;
+      }
+      valueChecks.add(check);
+    }
+    final boolean exact = valueChecks.stream().allMatch(Check::exact);
+
+    // For node shapes, the value node is the focus node itself.
+    if (path == null) {
+      if (minCount != null || maxCount != null) {
+        return null;
+      }
+      return new Check((data, node) -> testAll(valueChecks, data, node), exact);
+    }
+
+    // For property shapes, the value nodes are the objects of the path.
+    final Node finalPath = path;
+    final int finalMinCount = minCount == null ? 0 : minCount;
+    final int finalMaxCount = maxCount == null ? Integer.MAX_VALUE : maxCount;
+    return new Check((data, node) -> {
+      final Set<Node> values = new HashSet<>();
+      data.find(node, finalPath, Node.ANY)
+          .forEachRemaining(triple -> values.add(triple.getObject()));
+      if (values.size() < finalMinCount || values.size() > finalMaxCount) {
+        return false;
+      }
+      for (Node value : values) {
+        if (!testAll(valueChecks, data, value)) {
+          return false;
+        }
+      }
+      return true;
+    }, exact);
+  }
+
+  private static boolean testAll(List<Check> checks, Graph data, Node node) {
+    for (Check check : checks) {
+      if (!check.test(data, node)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private Check compileOr(Node list, Set<Node> shapesInProgress) {
+    final List<Node> members = getListMembers(shapesGraph, list);
+    if (members == null) {
+      return null;
+    }
+    final List<Check> alternatives = new ArrayList<>();
+    for (Node member : members) {
+      final Check alternative = compileShape(member, shapesInProgress);
+      if (alternative == null) {
+        return null;
+      }
+      alternatives.add(alternative);
+    }
+    return new Check((data, node) -> {
+      for (Check alternative : alternatives) {
+        if (alternative.test(data, node)) {
+          return true;
+        }
+      }
+      return false;
+    }, alternatives.stream().allMatch(Check::exact));
+  }
+
+  private static Check compileDatatype(Node datatype) {
+    if (!datatype.isURI()) {
+      return null;
+    }
+
+    // Jena checks the validity of the lexical form, possibly more strictly than we do here: we can
+    // only be sure that a value conforms, not that it does not.
+    final String datatypeUri = datatype.getURI();
+    return new Check((data, node) -> node.isLiteral()
+        && datatypeUri.equals(node.getLiteralDatatypeURI())
+        && node.getLiteralDatatype().isValid(node.getLiteralLexicalForm()), false);
+  }
+
+  private static Check compileNodeKind(Node nodeKind) {
+    final NodeCheck check;
+    if (SH_IRI.equals(nodeKind)) {
+      check = (data, node) -> node.isURI();
+    } else if (SH_LITERAL.equals(nodeKind)) {
+      check = (data, node) -> node.isLiteral();
+    } else if (SH_BLANK_NODE.equals(nodeKind)) {
+      check = (data, node) -> node.isBlank();
+    } else if (SH_BLANK_NODE_OR_IRI.equals(nodeKind)) {
+      check = (data, node) -> node.isBlank() || node.isURI();
+    } else if (SH_BLANK_NODE_OR_LITERAL.equals(nodeKind)) {
+      check = (data, node) -> node.isBlank() || node.isLiteral();
+    } else if (SH_IRI_OR_LITERAL.equals(nodeKind)) {
+      check = (data, node) -> node.isURI() || node.isLiteral();
+    } else {
+      return null;
+    }
+    return new Check(check, true);
+  }
+
+  private static Check compilePattern(Node pattern) {
+    if (!pattern.isLiteral()) {
+      return null;
+    }
+    final Pattern compiledPattern;
+    try {
+      compiledPattern = Pattern.compile(pattern.getLiteralLexicalForm());
+    } catch (PatternSyntaxException e) {
+      return null;
+    }
+    return new Check((data, node) -> !node.isBlank() && compiledPattern.matcher(
+        node.isURI() ? node.getURI() : node.getLiteralLexicalForm()).find(), true);
+  }
+
+  /**
+   * Checks whether the node is an instance of the class, i.e. whether the class can be reached
+   * from the node by following <code>rdf:type/rdfs:subClassOf*</code>.
+   */
+  private static boolean hasClass(Graph data, Node node, Node expectedClass) {
+    if (node.isLiteral()) {
+      return false;
+    }
+    final Set<Node> visited = new HashSet<>();
+    final ArrayDeque<Node> queue = new ArrayDeque<>();
+    data.find(node, RDF.type.asNode(), Node.ANY)
+        .forEachRemaining(triple -> queue.add(triple.getObject()));
+    while (!queue.isEmpty()) {
+      final Node type = queue.removeFirst();
+      if (expectedClass.equals(type)) {
+        return true;
+      }
+      if (visited.add(type)) {
+        data.find(type, RDFS.subClassOf.asNode(), Node.ANY)
+            .forEachRemaining(triple -> queue.addLast(triple.getObject()));
+      }
+    }
+    return false;
+  }
+
+  private static Integer getInteger(Node node) {
+    if (node.isLiteral() && node.getLiteralValue() instanceof Number number) {
+      return number.intValue();
+    }
+    return null;
+  }
+
+  /**
+   * @return The members of the RDF list in the shapes graph, or null if it is not a valid list.
+   */
+  static List<Node> getListMembers(Graph shapesGraph, Node list) {
+    final List<Node> result = new ArrayList<>();
+    final Set<Node> visited = new HashSet<>();
+    Node current = list;
+    while (!RDF.nil.asNode().equals(current)) {
+      if (!visited.add(current)) {
+        return null;
+      }
+      final List<Triple> first = shapesGraph.find(current, RDF.first.asNode(), Node.ANY).toList();
+      final List<Triple> rest = shapesGraph.find(current, RDF.rest.asNode(), Node.ANY).toList();
+      if (first.size() != 1 || rest.size() != 1) {
+        return null;
+      }
+      result.add(first.get(0).getObject());
+      current = rest.get(0).getObject();
+    }
+    return result;
+  }
+
+  /**
+   * A check on a node.
+   */
+  @FunctionalInterface
+  private interface NodeCheck {
+
+    boolean test(Graph data, Node node);
+  }
+
+  /**
+   * A compiled check on a node.
+   *
+   * @param check The check: if it returns true, the node conforms.
+   * @param exact Whether the check is exact: if true, the node also does not conform if the check
+   *              returns false. This is required for checks used in <code>sh:not</code>.
+   */
+  private record Check(NodeCheck check, boolean exact) {
+
+    boolean test(Graph data, Node node) {
+      return check.test(data, node);
+    }
+  }
+
+  /**
+   * Lazy initialization holder: the instance is created when this class is first accessed, after
+   * which it is read without synchronization. A failure is kept and reported on every access (see
+   * {@link LoadResult}).
+   */
+  private static final class Holder {
+
+    private static final LoadResult<CompiledShapes> INSTANCE = LoadResult.load(
+        () -> new CompiledShapes(ValidationShapes.get(),
+            Boolean.getBoolean(DISABLE_COMPILED_SHAPES_PROPERTY)));
+  }
+}
@@ -0,0 +1,184 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.shacl.Shapes;
+import org.apache.jena.shacl.ValidationReport;
+import org.apache.jena.shacl.parser.NodeShape;
+import org.apache.jena.shacl.parser.PropertyShape;
+import org.apache.jena.shacl.parser.Shape;
+import org.apache.jena.shacl.validation.ReportEntry;
+import org.apache.jena.shacl.validation.VLib;
+import org.apache.jena.shacl.validation.ValidationContext;
+
+/**
+ * <p>Build-time check that the shapes are evaluated by {@link ShaclRunner}, using the compiled
+ * shapes (see {@link CompiledShapes}), with the same outcome as with Jena's plain validator. It
+ * validates a valid record and a number of edge cases (for the compiled constraints:
+ * <code>sh:datatype</code>, <code>sh:nodeKind</code>, <code>sh:pattern</code>, <code>sh:in</code>,
+ * <code>sh:or</code> and <code>sh:not</code>, and for the shapes that are not compiled: closed
+ * shapes, nested <code>sh:node</code> and <code>sh:property</code> shapes and blank nodes) in
+ * both ways, and verifies that the reports are identical, including the order of the entries. In
+ * addition, it verifies for each property shape that is skipped because of the compiled checks,
+ * that Jena would indeed not report anything for it.
+ * </p>
+ * <p>The check runs as part of the build, after the shapes are precompiled (see
+ * {@link ShapesPrecompiler}). It fails with an exception if any difference is found.
+ * </p>
+ */
+public final class CompiledShapesEquivalenceCheck {
+
+  private static final String CHO = "<cho>";
+  private static final String AGGREGATION = "<aggregation>";
+  private static final String WEB_RESOURCE = "<media/0.jpg>";
+  private static final String LICENSE = "<http://data.example.org/license>";
+
+  /**
+   * The edge cases: the Turtle statements to add to a valid record, by name.
+   */
+  private static final Map<String, String> EDGE_CASES = createEdgeCases();
+
+  private CompiledShapesEquivalenceCheck() {
+  }
+
+  private static Map<String, String> createEdgeCases() {
+    final Map<String, String> result = new LinkedHashMap<>();
+    final String license = LICENSE + " a cc:License ; odrl:inheritFrom <http://data.example.org/"
+        + "rights> ; cc:deprecatedOn ";
+    result.put("datatype: typed literal", CHO + " edm:pid \"1\"^^xsd:integer .");
+    result.put("datatype: language-tagged literal", CHO + " edm:pid \"pid\"@en .");
+    result.put("datatype: IRI", CHO + " edm:pid <http://data.example.org/pid> .");
+    result.put("datatype: valid literal", license + "\"2020-01-01\"^^xsd:date .");
+    result.put("datatype: ill-formed literal", license + "\"not a date\"^^xsd:date .");
+    result.put("datatype: plain literal", license + "\"2020-01-01\" .");
+    result.put("nodeKind: literal", AGGREGATION + " edm:object \"object\" .");
+    result.put("nodeKind: blank node", AGGREGATION + " edm:object [ ] .");
+    result.put("pattern: other value", AGGREGATION + " edm:ugc \"TRUE\" .");
+    result.put("pattern: language-tagged literal", AGGREGATION + " edm:ugc \"true\"@en .");
+    result.put("sh:in: other value", CHO + " edm:type \"BOOK\" .");
+    result.put("sh:in: language-tagged literal", CHO + " edm:type \"TEXT\"@en .");
+    result.put("sh:in: other datatype", CHO + " edm:type \"TEXT\"^^xsd:token .");
+    result.put("sh:in: permitted IRI", CHO + " edm:intendedUsage ef_usage:Education .");
+    result.put("sh:in: other IRI", CHO + " edm:intendedUsage ef_usage:Unknown .");
+    result.put("sh:in: literal instead of IRI", CHO + " edm:intendedUsage \"Education\" .");
+    result.put("sh:or: positive integer", WEB_RESOURCE + " edm:pointCount \"5\"^^xsd:integer .");
+    result.put("sh:or: negative integer", WEB_RESOURCE + " edm:pointCount \"-1\"^^xsd:integer .");
+    result.put("sh:or: ill-formed integer", WEB_RESOURCE + " edm:pointCount \"x\"^^xsd:integer .");
+    result.put("sh:or: other datatype", CHO + " dc:description \"1\"^^xsd:integer .");
+    result.put("sh:or: IRI instead of literal", CHO + " dc:description <http://example.org/d> .");
+    result.put("sh:or/sh:not: agent", CHO + " dc:creator <http://data.example.org/agent> . "
+        + "<http://data.example.org/agent> a edm:Agent .");
+    result.put("sh:or/sh:not: blank node agent", CHO + " dc:creator [ a edm:Agent ] .");
+    result.put("sh:or/sh:not: other EDM class", CHO + " dc:creator " + WEB_RESOURCE + " .");
+    result.put("sh:or/sh:not: unknown resource", CHO + " dc:creator <http://example.org/x> .");
+    result.put("sh:or/sh:not: literal", CHO + " dc:creator \"Someone\" .");
+    result.put("sh:closed: unsupported property", CHO + " edm:isShownBy " + WEB_RESOURCE + " .");
+    result.put("nested shapes: property missing", CHO + " rdfs:seeAlso <related/1> .");
+    result.put("nested shapes: property empty", CHO + " rdfs:seeAlso <related/2> . "
+        + "<related/2> dcterms:conformsTo \" \" .");
+    result.put("nested shapes: blank node", CHO + " rdfs:seeAlso [ dcterms:conformsTo \"x\" ] .");
+    result.put("blank node chain", CHO + " dc:subject _:c0 . "
+        + "_:c0 a skos:Concept ; skos:prefLabel \"sea\"@en ; skos:narrower _:c1 . "
+        + "_:c1 a skos:Concept ; skos:prefLabel \" \" ; skos:narrower " + CHO + " .");
+    result.put("all of the above", String.join("\n", result.values()));
+    return result;
+  }
+
+  /**
+   * Runs the check.
+   *
+   * @param args The arguments (not used).
+   */
+  public static void main(String[] args) {
+    final Shapes shapes = ValidationShapes.get();
+    final CompiledShapes compiledShapes = CompiledShapes.create(shapes, false);
+    final CompiledShapes jenaOnly = CompiledShapes.create(shapes, true);
+    if (!compiledShapes.isEnabled()) {
+      throw new IllegalStateException("No shapes are compiled: nothing to check.");
+    }
+
+    // Collect the cases: the valid record and the edge cases.
+    final Map<String, Graph> cases = new LinkedHashMap<>();
+    cases.put("valid record",
+        RevalidationEquivalenceCheck.parse(RevalidationEquivalenceCheck.RECORD).getGraph());
+    for (Entry<String, String> edgeCase : EDGE_CASES.entrySet()) {
+      cases.put(edgeCase.getKey(), RevalidationEquivalenceCheck.parse(
+          RevalidationEquivalenceCheck.RECORD + "\n" + edgeCase.getValue()).getGraph());
+    }
+
+    // Check them. Without compiled shapes, profiling or filters, Jena's validator is used.
+    int differences = 0;
+    long skippedEvaluations = 0;
+    for (Entry<String, Graph> testCase : cases.entrySet()) {
+      final Graph data = SupportedResourceTypes.get().withTypeHierarchy(testCase.getValue());
+      final List<String> expected = describe(ShaclRunner.validate(shapes, data,
+          ValidationListener.NO_OP, null, null, jenaOnly));
+      final List<String> actual = describe(ShaclRunner.validate(shapes, data,
+          ValidationListener.NO_OP, null, null, compiledShapes));
+      if (!expected.equals(actual)) {
+        differences++;
+        System.out.println("DIFFERENT REPORTS: " + testCase.getKey());
+        System.out.println("  Jena:     " + expected);
+        System.out.println("  Compiled: " + actual);
+      }
+      final List<String> unsoundSkips = new ArrayList<>();
+      skippedEvaluations += checkSkippedShapes(shapes, data, compiledShapes, unsoundSkips);
+      if (!unsoundSkips.isEmpty()) {
+        differences++;
+        System.out.println("UNSOUND SKIPS: " + testCase.getKey());
+        unsoundSkips.forEach(skip -> System.out.println("  " + skip));
+      }
+    }
+    System.out.println("Checked " + cases.size() + " cases (" + skippedEvaluations
+        + " property shape evaluations skipped): " + differences + " difference(s).");
+    if (differences > 0) {
+      throw new IllegalStateException(
+          "The compiled shapes change the validation outcome in " + differences + " case(s).");
+    }
+  }
+
+  /**
+   * Verifies that for every property shape that the compiled shapes would skip, Jena would not
+   * report anything.
+   *
+   * @return The number of skipped property shape evaluations.
+   */
+  private static long checkSkippedShapes(Shapes shapes, Graph data, CompiledShapes compiledShapes,
+      List<String> unsoundSkips) {
+    long skipped = 0;
+    for (Shape shape : shapes.getTargetShapes()) {
+      if (!(shape instanceof NodeShape nodeShape) || shape.deactivated()) {
+        continue;
+      }
+      for (Node focusNode : VLib.focusNodes(data, shape)) {
+        for (PropertyShape propertyShape : nodeShape.getPropertyShapes()) {
+          if (compiledShapes.conforms(propertyShape, data, focusNode)) {
+            skipped++;
+            final ValidationContext context = ValidationContext.create(shapes, data);
+            VLib.validateShape(context, data, propertyShape, focusNode);
+            final ValidationReport report = context.generateReport();
+            if (!report.conforms()) {
+              unsoundSkips.add(propertyShape + " on " + focusNode + ": " + describe(report));
+            }
+          }
+        }
+      }
+    }
+    return skipped;
+  }
+
+  private static List<String> describe(ValidationReport report) {
+    final List<String> result = new ArrayList<>();
+    for (ReportEntry entry : report.getEntries()) {
+      result.add(entry.severity().level().getLocalName() + " " + entry.focusNode() + " "
+          + entry.resultPath() + " " + entry.value() + " " + entry.source() + " "
+          + entry.message());
+    }
+    return result;
+  }
+}
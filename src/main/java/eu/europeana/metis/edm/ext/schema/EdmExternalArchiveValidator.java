@@ -0,0 +1,428 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import eu.europeana.metis.common.rdf.RdfRepresentation;
+import eu.europeana.metis.edm.ext.schema.EdmExternalBatchValidator.ReportConsumer;
+import eu.europeana.metis.edm.ext.schema.EdmExternalBatchValidator.ReportOrder;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.apache.commons.compress.archivers.ArchiveException;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+
+/**
+ * <p>This class provides EDM external validation for archives (ZIP, TAR or gzipped TAR) that
+ * contain one record per entry. The archive is read as a stream, without extracting it to disk,
+ * and the entries are validated in parallel using an {@link EdmExternalBatchValidator}. As records
+ * are only read from the archive when there is capacity to validate them, the memory use is
+ * bounded by the maximum number of records in flight.
+ * </p>
+ * <p>The representation of each entry is determined from its file extension or, failing that,
+ * from its content. Entries whose representation can not be determined (e.g. a readme file) are
+ * skipped, and counted as such in the {@link ArchiveSummary}. Entries that exceed the maximum entry
+ * size are not read into memory: they get an error report instead.
+ * </p>
+ * <p>The archive format is detected from the content (using Commons Compress), so that TAR archives
+ * without the POSIX (<code>ustar</code>) header, as written by old versions of tar, are also
+ * supported.
+ * </p>
+ * <p>This class can also be used as a command-line tool: see {@link #main(String[])}.</p>
+ */
+public class EdmExternalArchiveValidator {
+
+  /**
+   * The default maximum size of an entry, in bytes (64 MB).
+   */
+  public static final int DEFAULT_MAX_ENTRY_SIZE = 64 * 1024 * 1024;
+
+  // The number of bytes to inspect when detecting the gzip compression or record representation.
+  private static final int SNIFF_LENGTH = 512;
+
+  // The start of an XML document: an XML declaration, a comment, a document type declaration or a
+  // root element with namespace declarations (which Turtle, starting with an IRI, can not match).
+  private static final Pattern XML_START = Pattern.compile(
+      "<\\?xml|<!|<rdf:RDF|<[\\p{L}_][\\p{L}\\d_.:-]*\\s[^<>]*xmlns", Pattern.DOTALL);
+
+  private final EdmExternalBatchValidator batchValidator;
+  private final int maxEntrySize;
+
+  /**
+   * A record from an archive.
+   *
+   * @param name           The name of the archive entry.
+   * @param representation The detected representation of the record.
+   * @param data           The content of the archive entry, or null if the entry exceeds the
+   *                       maximum entry size (in which case it gets an error report).
+   */
+  public record ArchiveRecord(String name, RdfRepresentation representation, byte[] data) {
+
+  }
+
+  /**
+   * A summary of the validation of an archive.
+   *
+   * @param recordCount    The number of records (entries) that were validated.
+   * @param errorCount     The number of records with a report of severity
+   *                       {@link ValidationIssueSeverity#ERROR}.
+   * @param warningCount   The number of records with a report of severity
+   *                       {@link ValidationIssueSeverity#WARNING}.
+   * @param truncatedCount The number of records with a truncated report.
+   * @param skippedCount   The number of entries that were skipped as their representation could
+   *                       not be determined. Directories are not counted.
+   * @param oversizedCount The number of records that exceed the maximum entry size. These are
+   *                       included in the record count and the error count.
+   */
+  public record ArchiveSummary(int recordCount, int errorCount, int warningCount,
+                               int truncatedCount, int skippedCount, int oversizedCount) {
+
+  }
+
+  /**
+   * Constructor, using the {@link #DEFAULT_MAX_ENTRY_SIZE default maximum entry size}.
+   *
+   * @param batchValidator The batch validator to use for validating the records.
+   */
+  public EdmExternalArchiveValidator(EdmExternalBatchValidator batchValidator) {
+    this(batchValidator, DEFAULT_MAX_ENTRY_SIZE);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param batchValidator The batch validator to use for validating the records.
+   * @param maxEntrySize   The maximum size of an entry, in bytes. Larger entries are not read, but
+   *                       get an error report. Must be positive and less than
+   *                       {@link Integer#MAX_VALUE}.
+   */
+  public EdmExternalArchiveValidator(EdmExternalBatchValidator batchValidator,
+      int maxEntrySize) {
+    if (maxEntrySize < 1 || maxEntrySize == Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "The maximum entry size must be positive and less than Integer.MAX_VALUE.");
+    }
+    this.batchValidator = batchValidator;
+    this.maxEntrySize = maxEntrySize;
+  }
+
+  /**
+   * Validates the records in an archive file.
+   *
+   * @param archive  The archive file.
+   * @param consumer The consumer for the validation reports.
+   * @param <E>      The exception that may be thrown by the report consumer.
+   * @return A summary of the validation.
+   * @throws IOException          In case the archive could not be read.
+   * @throws E                    When something went wrong while consuming a report.
+   * @throws InterruptedException When the thread was interrupted while waiting for a validation.
+   */
+  public <E extends Exception> ArchiveSummary validate(Path archive,
+      ReportConsumer<? super ArchiveRecord, E> consumer)
+      throws IOException, E, InterruptedException {
+    try (InputStream input = Files.newInputStream(archive)) {
+      return validate(input, consumer);
+    }
+  }
+
+  /**
+   * Validates the records in an archive. The archive format is detected from the content.
+   *
+   * @param archive  The archive. The stream is not closed by this method.
+   * @param consumer The consumer for the validation reports.
+   * @param <E>      The exception that may be thrown by the report consumer.
+   * @return A summary of the validation.
+   * @throws IOException          In case the archive could not be read or is not in a supported
+   *                              format.
+   * @throws E                    When something went wrong while consuming a report.
+   * @throws InterruptedException When the thread was interrupted while waiting for a validation.
+   */
+  public <E extends Exception> ArchiveSummary validate(InputStream archive,
+      ReportConsumer<? super ArchiveRecord, E> consumer)
+      throws IOException, E, InterruptedException {
+    final ArchiveRecordIterator records =
+        new ArchiveRecordIterator(openArchive(archive, maxEntrySize));
+    final AtomicInteger errorCount = new AtomicInteger();
+    final AtomicInteger warningCount = new AtomicInteger();
+    final AtomicInteger truncatedCount = new AtomicInteger();
+    try {
+      batchValidator.validate(records, this::openRecord, ArchiveRecord::representation,
+          (ArchiveRecord record, ValidationReport report) -> {
+            if (report.severity() == ValidationIssueSeverity.ERROR) {
+              errorCount.incrementAndGet();
+            } else if (report.severity() == ValidationIssueSeverity.WARNING) {
+              warningCount.incrementAndGet();
+            }
+            if (report.truncated()) {
+              truncatedCount.incrementAndGet();
+            }
+            consumer.accept(record, report);
+          });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return new ArchiveSummary(records.getRecordCount(), errorCount.get(), warningCount.get(),
+        truncatedCount.get(), records.getSkippedCount(), records.getOversizedCount());
+  }
+
+  private InputStream openRecord(ArchiveRecord record) {
+    if (record.data() == null) {
+      throw new UncheckedIOException(new IOException(
+          "The entry exceeds the maximum entry size of " + maxEntrySize + " bytes."));
+    }
+    return new ByteArrayInputStream(record.data());
+  }
+
+  private static EntryReader openArchive(InputStream archive, int maxEntrySize)
+      throws IOException {
+
+    // Unwrap gzip compression if present.
+    BufferedInputStream input = new BufferedInputStream(archive);
+    byte[] header = peek(input, SNIFF_LENGTH);
+    if (header.length >= 2 && (header[0] & 0xFF) == 0x1F && (header[1] & 0xFF) == 0x8B) {
+      input = new BufferedInputStream(new GZIPInputStream(input));
+      header = peek(input, SNIFF_LENGTH);
+    }
+
+    // Detect the archive format. This recognizes TAR archives with and without a ustar header.
+    String format;
+    try {
+      format = ArchiveStreamFactory.detect(input);
+    } catch (ArchiveException e) {
+      format = null;
+    }
+    if (ArchiveStreamFactory.ZIP.equals(format)) {
+      final ZipInputStream zipInput = new ZipInputStream(input);
+      return () -> {
+        ZipEntry entry;
+        while ((entry = zipInput.getNextEntry()) != null) {
+          if (!entry.isDirectory()) {
+            return readEntry(entry.getName(), zipInput, maxEntrySize);
+          }
+        }
+        return null;
+      };
+    }
+    if (ArchiveStreamFactory.TAR.equals(format)) {
+      final TarArchiveInputStream tarInput = new TarArchiveInputStream(input);
+      return () -> {
+        TarArchiveEntry entry;
+        while ((entry = tarInput.getNextEntry()) != null) {
+          if (entry.isFile()) {
+            return readEntry(entry.getName(), tarInput, maxEntrySize);
+          }
+        }
+        return null;
+      };
+    }
+    throw new IOException("Unsupported archive format: expected ZIP, TAR or gzipped TAR.");
+  }
+
+  private static Entry readEntry(String name, InputStream input, int maxEntrySize)
+      throws IOException {
+    // We read at most one byte more than the maximum: if we get it, the entry is too large. The
+    // rest of the entry is skipped when the next entry is requested.
+    final byte[] data = input.readNBytes(maxEntrySize + 1);
+    if (data.length > maxEntrySize) {
+      return new Entry(name, Arrays.copyOf(data, Math.min(data.length, SNIFF_LENGTH)),
+          true);
+    }
+    return new Entry(name, data, false);
+  }
+
+  private static byte[] peek(BufferedInputStream input, int length) throws IOException {
+    input.mark(length);
+    final byte[] result = input.readNBytes(length);
+    input.reset();
+    return result;
+  }
+
+  /**
+   * Detects the representation of a record, first from the file extension and then from the
+   * content.
+   *
+   * @param name The name of the record file.
+   * @param data The content of the record.
+   * @return The representation, or null if it could not be determined.
+   */
+  static RdfRepresentation detectRepresentation(String name, byte[] data) {
+    final RdfRepresentation fromName = forLang(RDFLanguages.filenameToLang(name));
+    return fromName != null ? fromName : forLang(detectLang(data));
+  }
+
+  private static Lang detectLang(byte[] data) {
+    final String start = new String(data, 0, Math.min(data.length, SNIFF_LENGTH),
+        StandardCharsets.UTF_8).replace("\uFEFF", "").stripLeading();
+    final String lowerCaseStart = start.toLowerCase(Locale.ROOT);
+    if (XML_START.matcher(start).lookingAt()) {
+      return Lang.RDFXML;
+    }
+    if (start.startsWith("{") || start.startsWith("[")) {
+      return Lang.JSONLD;
+    }
+    if (lowerCaseStart.startsWith("@prefix") || lowerCaseStart.startsWith("@base")
+        || lowerCaseStart.startsWith("prefix") || lowerCaseStart.startsWith("base")
+        || start.startsWith("<")) {
+      return Lang.TURTLE;
+    }
+    return null;
+  }
+
+  private static RdfRepresentation forLang(Lang lang) {
+    if (lang == null) {
+      return null;
+    }
+    return Arrays.stream(RdfRepresentation.values())
+        .filter(representation -> lang.equals(representation.getLang())).findFirst()
+        .orElse(null);
+  }
+
+  /**
+   * An entry in an archive.
+   *
+   * @param name      The name of the entry.
+   * @param data      The content of the entry or, if the entry is oversized, the start of it.
+   * @param oversized Whether the entry exceeds the maximum entry size.
+   */
+  private record Entry(String name, byte[] data, boolean oversized) {
+
+  }
+
+  /**
+   * Reads the file entries from an archive.
+   */
+  @FunctionalInterface
+  private interface EntryReader {
+
+    /**
+     * @return The next file entry, or null if there are no more entries.
+     * @throws IOException In case the archive could not be read.
+     */
+    Entry next() throws IOException;
+  }
+
+  /**
+   * Iterates over the records in an archive, skipping entries with an unknown representation. An
+   * entry is only read when it is requested. Records for oversized entries have no data. Not
+   * thread-safe.
+   */
+  private static final class ArchiveRecordIterator implements Iterator<ArchiveRecord> {
+
+    private final EntryReader entryReader;
+    private ArchiveRecord nextRecord = null;
+    private boolean finished = false;
+    private int recordCount = 0;
+    private int skippedCount = 0;
+    private int oversizedCount = 0;
+
+    ArchiveRecordIterator(EntryReader entryReader) {
+      this.entryReader = entryReader;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (nextRecord == null && !finished) {
+        final Entry entry;
+        try {
+          entry = entryReader.next();
+        } catch (IOException e) {
+          throw new UncheckedIOException("Could not read archive.", e);
+        }
+        if (entry == null) {
+          finished = true;
+        } else {
+          final RdfRepresentation representation =
+              detectRepresentation(entry.name(), entry.data());
+          if (representation == null) {
+            skippedCount++;
+          } else if (entry.oversized()) {
+            oversizedCount++;
+            nextRecord = new ArchiveRecord(entry.name(), representation, null);
+          } else {
+            nextRecord = new ArchiveRecord(entry.name(), representation, entry.data());
+          }
+        }
+      }
+      return nextRecord != null;
+    }
+
+    @Override
+    public ArchiveRecord next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final ArchiveRecord result = nextRecord;
+      nextRecord = null;
+      recordCount++;
+      return result;
+    }
+
+    int getRecordCount() {
+      return recordCount;
+    }
+
+    int getSkippedCount() {
+      return skippedCount;
+    }
+
+    int getOversizedCount() {
+      return oversizedCount;
+    }
+  }
+
+  /**
+   * <p>Main method: validates the records in an archive and prints a line for each record (entry
+   * name, severity, record ID and number of report items), followed by a summary. Exits with a
+   * non-zero status if any record has an error.
+   * </p>
+   * <p>Usage: <code>EdmExternalArchiveValidator &lt;archive file&gt; [&lt;threads&gt;]</code>. By
+   * default, one thread per available processor is used.
+   * </p>
+   *
+   * @param args The arguments: the archive file and optionally the number of threads.
+   * @throws IOException          In case the archive could not be read.
+   * @throws InterruptedException When the thread was interrupted while waiting for a validation.
+   */
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length < 1 || args.length > 2) {
+      throw new IllegalArgumentException(
+          "Expected one or two arguments: the archive file and optionally the number of threads.");
+    }
+    final int threads = args.length > 1 ? Integer.parseInt(args[1])
+        : Runtime.getRuntime().availableProcessors();
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final ArchiveSummary summary;
+    try {
+      final EdmExternalArchiveValidator validator = new EdmExternalArchiveValidator(
+          new EdmExternalBatchValidator(new EdmExternalValidator(), executor, 2 * threads,
+              ReportOrder.INPUT_ORDER));
+      summary = validator.validate(Path.of(args[0]),
+          (ArchiveRecord record, ValidationReport report) -> System.out.println(
+              record.name() + "\t" + report.severity() + "\t" + report.recordId() + "\t"
+                  + report.reportItems().size()));
+    } finally {
+      executor.shutdownNow();
+    }
+    System.out.println(summary);
+    if (summary.errorCount() > 0) {
+      System.exit(1);
+    }
+  }
+}
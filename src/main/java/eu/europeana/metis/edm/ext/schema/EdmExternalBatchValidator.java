@@ -0,0 +1,263 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import eu.europeana.metis.common.rdf.RdfRepresentation;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * <p>This class provides EDM external validation for batches of records. The records are
+ * validated in parallel on a caller-supplied executor (which may for instance be a virtual thread
+ * executor), with a bounded number of records in flight at any time. The resulting reports are
+ * delivered to a {@link ReportConsumer}, either in the order of the input or in the order in
+ * which the validations complete.
+ * </p>
+ * <p>Note: the report consumer is always called from the thread that invoked the validation
+ * method, never concurrently. Records are only requested from the input when there is capacity to
+ * validate them, so the input may be lazy. A record of which the data can not be read (i.e. the
+ * data opener throws an {@link UncheckedIOException}, or reading or closing the data fails)
+ * results in a report with an error, and the batch continues. If the consumer throws an
+ * exception, the validations that are still pending are cancelled.
+ * </p>
+ */
+public class EdmExternalBatchValidator {
+
+  private final EdmExternalValidator validator;
+  private final Executor executor;
+  private final int maxRecordsInFlight;
+  private final ReportOrder reportOrder;
+
+  /**
+   * The order in which reports are delivered to the consumer.
+   */
+  public enum ReportOrder {
+
+    /**
+     * Reports are delivered in the same order as the records in the input.
+     */
+    INPUT_ORDER,
+
+    /**
+     * Reports are delivered as soon as the validation of the record completes.
+     */
+    COMPLETION_ORDER
+  }
+
+  /**
+   * Implementations of this interface can consume the validation reports.
+   *
+   * @param <T> The type of the records.
+   * @param <E> Exception type to throw.
+   */
+  public interface ReportConsumer<T, E extends Exception> {
+
+    /**
+     * Processes the report for a record.
+     *
+     * @param record The record that was validated.
+     * @param report The validation report for the record.
+     * @throws E When there is an issue with processing the report.
+     */
+    void accept(T record, ValidationReport report) throws E;
+  }
+
+  private record Submission<T>(T record, CompletableFuture<ValidationReport> report) {
+
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param validator          The validator to use for the individual records.
+   * @param executor           The executor on which to perform the validations.
+   * @param maxRecordsInFlight The maximum number of records that are submitted for validation but
+   *                           whose report has not yet been delivered to the consumer. Must be
+   *                           positive.
+   * @param reportOrder        The order in which to deliver the reports.
+   */
+  public EdmExternalBatchValidator(EdmExternalValidator validator, Executor executor,
+      int maxRecordsInFlight, ReportOrder reportOrder) {
+    if (maxRecordsInFlight < 1) {
+      throw new IllegalArgumentException(
+          "The maximum number of records in flight must be positive.");
+    }
+    this.validator = validator;
+    this.executor = executor;
+    this.maxRecordsInFlight = maxRecordsInFlight;
+    this.reportOrder = reportOrder;
+  }
+
+  /**
+   * Validates a stream of records that all have the same representation.
+   *
+   * @param records        The records to validate.
+   * @param dataOpener     The function that opens the data for a record. The returned stream will
+   *                       be closed by this class.
+   * @param representation The representation of the records.
+   * @param consumer       The consumer for the validation reports.
+   * @param <T>            The type of the records.
+   * @param <E>            The exception that may be thrown by the report consumer.
+   * @throws E                    When something went wrong while consuming a report.
+   * @throws InterruptedException When the thread was interrupted while waiting for a validation.
+   */
+  public <T, E extends Exception> void validate(Stream<T> records,
+      Function<? super T, ? extends InputStream> dataOpener, RdfRepresentation representation,
+      ReportConsumer<? super T, E> consumer) throws E, InterruptedException {
+    validate(records.iterator(), dataOpener, record -> representation, consumer);
+  }
+
+  /**
+   * Validates records that all have the same representation.
+   *
+   * @param records        The records to validate.
+   * @param dataOpener     The function that opens the data for a record. The returned stream will
+   *                       be closed by this class.
+   * @param representation The representation of the records.
+   * @param consumer       The consumer for the validation reports.
+   * @param <T>            The type of the records.
+   * @param <E>            The exception that may be thrown by the report consumer.
+   * @throws E                    When something went wrong while consuming a report.
+   * @throws InterruptedException When the thread was interrupted while waiting for a validation.
+   */
+  public <T, E extends Exception> void validate(Iterator<T> records,
+      Function<? super T, ? extends InputStream> dataOpener, RdfRepresentation representation,
+      ReportConsumer<? super T, E> consumer) throws E, InterruptedException {
+    validate(records, dataOpener, record -> representation, consumer);
+  }
+
+  /**
+   * Validates records, each of which may have its own representation.
+   *
+   * @param records                The records to validate.
+   * @param dataOpener             The function that opens the data for a record. The returned
+   *                               stream will be closed by this class.
+   * @param representationFunction The function that determines the representation of a record.
+   * @param consumer               The consumer for the validation reports.
+   * @param <T>                    The type of the records.
+   * @param <E>                    The exception that may be thrown by the report consumer.
+   * @throws E                    When something went wrong while consuming a report.
+   * @throws InterruptedException When the thread was interrupted while waiting for a validation.
+   */
+  public <T, E extends Exception> void validate(Iterator<T> records,
+      Function<? super T, ? extends InputStream> dataOpener,
+      Function<? super T, RdfRepresentation> representationFunction,
+      ReportConsumer<? super T, E> consumer) throws E, InterruptedException {
+    final Function<T, Submission<T>> submitter = record -> new Submission<>(record,
+        CompletableFuture.supplyAsync(() -> validateRecord(record, dataOpener,
+            representationFunction), executor));
+    if (reportOrder == ReportOrder.INPUT_ORDER) {
+      validateInInputOrder(records, submitter, consumer);
+    } else {
+      validateInCompletionOrder(records, submitter, consumer);
+    }
+  }
+
+  private <T, E extends Exception> void validateInInputOrder(Iterator<T> records,
+      Function<T, Submission<T>> submitter, ReportConsumer<? super T, E> consumer)
+      throws E, InterruptedException {
+
+    // Keep the submissions in input order. Wait for the oldest one when we are at capacity.
+    final ArrayDeque<Submission<T>> pending = new ArrayDeque<>();
+    try {
+      while (records.hasNext()) {
+        if (pending.size() >= maxRecordsInFlight) {
+          deliver(pending.removeFirst(), consumer);
+        }
+        pending.addLast(submitter.apply(records.next()));
+      }
+      while (!pending.isEmpty()) {
+        deliver(pending.removeFirst(), consumer);
+      }
+    } finally {
+
+      // In case of failure, nobody will consume the remaining reports: cancel the validations.
+      pending.forEach(submission -> submission.report().cancel(false));
+    }
+  }
+
+  private <T, E extends Exception> void validateInCompletionOrder(Iterator<T> records,
+      Function<T, Submission<T>> submitter, ReportConsumer<? super T, E> consumer)
+      throws E, InterruptedException {
+
+    // Have submissions add themselves to a queue when done. Wait for any one of them when we are
+    // at capacity.
+    final BlockingQueue<Submission<T>> completed = new LinkedBlockingQueue<>();
+    final Set<CompletableFuture<ValidationReport>> inFlight = new HashSet<>();
+    try {
+      while (records.hasNext()) {
+        if (inFlight.size() >= maxRecordsInFlight) {
+          deliverCompleted(completed.take(), inFlight, consumer);
+        }
+        final Submission<T> submission = submitter.apply(records.next());
+        inFlight.add(submission.report());
+        submission.report().whenComplete((report, exception) -> completed.add(submission));
+      }
+      while (!inFlight.isEmpty()) {
+        deliverCompleted(completed.take(), inFlight, consumer);
+      }
+    } finally {
+
+      // In case of failure, nobody will consume the remaining reports: cancel the validations.
+      inFlight.forEach(report -> report.cancel(false));
+    }
+  }
+
+  private static <T, E extends Exception> void deliverCompleted(Submission<T> submission,
+      Set<CompletableFuture<ValidationReport>> inFlight, ReportConsumer<? super T, E> consumer)
+      throws E, InterruptedException {
+    inFlight.remove(submission.report());
+    deliver(submission, consumer);
+  }
+
+  private <T> ValidationReport validateRecord(T record,
+      Function<? super T, ? extends InputStream> dataOpener,
+      Function<? super T, RdfRepresentation> representationFunction) {
+    // A record that can not be read gets an error report: it does not end the batch.
+    final InputStream data;
+    try {
+      data = dataOpener.apply(record);
+    } catch (UncheckedIOException e) {
+      return createReadFailureReport(e.getCause());
+    }
+    try (data) {
+      return validator.validateSingleRecord(data, representationFunction.apply(record));
+    } catch (IOException e) {
+      return createReadFailureReport(e);
+    }
+  }
+
+  private static ValidationReport createReadFailureReport(IOException exception) {
+    return new ValidationReport(null, ValidationIssueSeverity.ERROR,
+        List.of(new ValidationReportItem(null, null, null,
+            "Could not read input: " + exception.getMessage(), ValidationIssueSeverity.ERROR)));
+  }
+
+  private static <T, E extends Exception> void deliver(Submission<T> submission,
+      ReportConsumer<? super T, E> consumer) throws E, InterruptedException {
+    final ValidationReport report;
+    try {
+      report = submission.report().get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      if (e.getCause() instanceof Error error) {
+        throw error;
+      }
+      throw new IllegalStateException("Could not validate record.", e.getCause());
+    }
+    consumer.accept(submission.record(), report);
+  }
+}
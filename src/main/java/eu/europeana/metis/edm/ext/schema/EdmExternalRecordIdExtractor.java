@@ -2,21 +2,19 @@ package eu.europeana.metis.edm.ext.schema;
 
 import eu.europeana.metis.common.rdf.RdfBaseUrlUtils;
 import eu.europeana.metis.common.rdf.RdfRepresentation;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import org.apache.jena.graph.Triple;
-import org.apache.jena.query.QueryExecution;
-import org.apache.jena.query.QueryExecutionFactory;
-import org.apache.jena.query.QueryFactory;
-import org.apache.jena.query.ResultSet;
-import org.apache.jena.rdf.model.Model;
-import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFParser;
 import org.apache.jena.riot.RDFParserBuilder;
 import org.apache.jena.riot.system.StreamRDFBase;
@@ -25,7 +23,9 @@ import org.apache.jena.sparql.core.Quad;
 /**
  * This class provides functionality for extracting the record IDs from records. Specifically,
  * it returns all IRIs of resources of type <code>edm:ProvidedCHO</code> that are found in the
- * input data. This class implements a streamed parsing, and thus supports large data volumes.
+ * input data. This class implements a streamed parsing, and thus supports large data volumes. For
+ * large files, {@link #extractRecordIds(Path, RdfRepresentation)} avoids full parsing where
+ * possible.
  */
 public class EdmExternalRecordIdExtractor {
 
@@ -85,6 +85,44 @@ public class EdmExternalRecordIdExtractor {
     }
   }
 
+  /**
+   * <p>Returns all record IDs from a file. This method is meant for large dumps: for N-Triples,
+   * N-Quads and RDF/XML, it first attempts a fast scan of the file that looks only for the
+   * <code>rdf:type edm:ProvidedCHO</code> declarations without building RDF triples. If the file
+   * contains constructs that this scan can not interpret with certainty, or if the file is in
+   * another format, this method falls back to full parsing (which gives the same result).
+   * </p>
+   * <p>Note: the fast scan does not validate the data. Data that is malformed in ways that don't
+   * affect the record ID declarations may therefore be accepted, where full parsing would fail.
+   * </p>
+   *
+   * @param file           The file containing the data.
+   * @param representation The representation of the data.
+   * @return A set with all declared record IDs. Is not null, but could be empty.
+   * @throws DataParseException When the data could not be parsed.
+   * @throws IOException        When the file could not be read.
+   */
+  public static Set<String> extractRecordIds(Path file, RdfRepresentation representation)
+      throws DataParseException, IOException {
+    final Optional<Set<String>> scannedRecordIds;
+    if (Lang.NTRIPLES.equals(representation.getLang())
+        || Lang.NQUADS.equals(representation.getLang())) {
+      scannedRecordIds = NTriplesRecordIdScanner.scan(file);
+    } else if (representation == RdfRepresentation.XML) {
+      try (InputStream data = new BufferedInputStream(Files.newInputStream(file))) {
+        scannedRecordIds = RdfXmlRecordIdScanner.scan(data);
+      }
+    } else {
+      scannedRecordIds = Optional.empty();
+    }
+    if (scannedRecordIds.isPresent()) {
+      return scannedRecordIds.get();
+    }
+    try (InputStream data = new BufferedInputStream(Files.newInputStream(file))) {
+      return extractRecordIds(data, representation);
+    }
+  }
+
   private static Set<String> extractRecordIdsFromNormalizedData(InputStream normalizedData,
       RdfRepresentation representation) {
     final RDFParser parser = RDFParserBuilder.create().source(normalizedData)
@@ -113,34 +151,4 @@ public class EdmExternalRecordIdExtractor {
     });
     return recordIds;
   }
-
-  /**
-   * Returns all record IDs.
-   *
-   * @param model The model containing the data.
-   * @return A set with all declared record IDs. Is not null, but could be empty.
-   */
-  static Set<String> extractRecordIds(Model model) {
-
-    // Check which resources are of type edm:ProvidedCHO. Note: subtypes are not supported.
-    final String typeMapQuery = """
-        PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>
-        PREFIX edm: <http://www.europeana.eu/schemas/edm/>
-        SELECT DISTINCT ?resource
-        WHERE {
-            ?resource rdf:type edm:ProvidedCHO .
-        }""";
-    try (QueryExecution typeMapQueryExecution = QueryExecutionFactory
-        .create(QueryFactory.create(typeMapQuery), model)) {
-      final Set<String> recordIds = new HashSet<>();
-      final ResultSet results = typeMapQueryExecution.execSelect();
-      results.forEachRemaining(result -> {
-        final RDFNode resource = result.get("resource");
-        if (resource.isURIResource()) {
-          recordIds.add(resource.asResource().getURI());
-        }
-      });
-      return recordIds;
-    }
-  }
 }
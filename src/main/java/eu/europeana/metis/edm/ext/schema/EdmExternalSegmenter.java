@@ -5,14 +5,44 @@ import static org.apache.jena.rdf.model.ResourceFactory.createResource;
 
 import eu.europeana.metis.common.rdf.RdfRepresentation;
 import eu.europeana.metis.edm.ext.schema.EdmExternalSegmenter.RecordConsumer.SegmentationResult;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.ReadWrite;
 import org.apache.jena.rdf.model.Literal;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
@@ -21,7 +51,14 @@ import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.ResIterator;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.tdb2.TDB2Factory;
+import org.apache.jena.tdb2.sys.TDBInternal;
 import org.apache.jena.util.iterator.ExtendedIterator;
 import org.apache.jena.vocabulary.RDF;
 
@@ -30,6 +67,9 @@ import org.apache.jena.vocabulary.RDF;
  * create an instance and add data to it. When ready, the user can segment the data into individual
  * records.
  * </p>
+ * <p>The dataset can be stored in memory or, for datasets that are larger than the available heap,
+ * on local disk (see {@link StorageMode}).
+ * </p>
  * <p>Note: this class only supports 'true' RDF: so the two non-RDF-compliant fields related to
  * provenance (<code>edm:wasGeneratedBy</code> and <code>edm:confidenceLevel</code>) are not
  * supported.
@@ -46,8 +86,78 @@ public class EdmExternalSegmenter implements AutoCloseable {
       "http://www.w3.org/2004/02/skos/core#notation", "http://creativecommons.org/ns#deprecatedOn");
   private static final String STRING_DATATYPE = "http://www.w3.org/2001/XMLSchema#string";
 
+  /**
+   * The default for the largest number of statements reachable from a shared resource for which
+   * this content is cached. Shared resources are typically contextual entities (agents, places,
+   * concepts, time spans and licenses) with tens of statements. Larger structures are rarely
+   * shared by many records, and caching them would evict many of the typical entities.
+   */
+  public static final int DEFAULT_MAX_SHARED_CLOSURE_SIZE = 1_000;
+
+  /**
+   * The default for the largest total number of statements in the cache of shared content. With
+   * in the order of a hundred bytes per (shared) statement and its entry in the cache, this
+   * bounds the memory use of the cache to in the order of ten megabytes, which is small compared
+   * to the in-memory dataset itself.
+   */
+  public static final int DEFAULT_MAX_CACHED_STATEMENTS = 100_000;
+
   private final boolean legacyEdmXlmSchemaMode;
+  private final int maxSharedClosureSize;
+  private final int maxCachedStatements;
+  private final Path storageDirectory;
+  private final Dataset diskDataset;
   private final Model datasetModel;
+  private boolean closed = false;
+
+  // The index of the dataset and the cache of shared content (in least-recently-used order, with
+  // the number of statements in it): these are reset when data is added. The cache is guarded by
+  // its own lock.
+  private volatile DatasetIndex datasetIndex = null;
+  private final LinkedHashMap<Node, SharedClosure> sharedClosures =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private int cachedStatementCount = 0;
+
+  /**
+   * The index of the dataset.
+   *
+   * @param providedCHOs    The resources with type edm:ProvidedCHO.
+   * @param sharedResources The resources that are referenced by more than one resource, i.e. that
+   *                        can be shared between records. Empty if the dataset is stored on disk,
+   *                        in which case the shared content is not cached.
+   */
+  private record DatasetIndex(Set<Node> providedCHOs, Set<Node> sharedResources) {
+
+  }
+
+  /**
+   * The content reachable from a shared resource.
+   *
+   * @param statements The statements, by subject.
+   * @param size       The number of statements.
+   */
+  private record SharedClosure(Map<Resource, List<Statement>> statements, int size) {
+
+  }
+
+  /**
+   * The ways in which the dataset can be stored while it is being segmented.
+   */
+  public enum StorageMode {
+
+    /**
+     * The dataset is stored in memory. This is the fastest option, but the size of the dataset is
+     * limited by the available heap.
+     */
+    IN_MEMORY,
+
+    /**
+     * The dataset is stored in a triple store on local disk, in a temporary directory that is
+     * removed when the segmenter is closed. This allows segmenting datasets that are larger than
+     * the available heap. In this mode, the content that is shared between records is not cached.
+     */
+    DISK
+  }
 
   /**
    * Implementations of this interface can consume segmented records from the segmenter.
@@ -68,6 +178,25 @@ public class EdmExternalSegmenter implements AutoCloseable {
     SegmentationResult accept(WritableRecord record) throws E;
   }
 
+  /**
+   * Implementations of this interface can consume segmented records from the segmenter, together
+   * with their validation report.
+   *
+   * @param <E> Exception type to throw.
+   */
+  public interface ValidatedRecordConsumer<E extends Exception> {
+
+    /**
+     * Processes the data. The record only needs to be written if the consumer wishes to keep it.
+     *
+     * @param record The record.
+     * @param report The validation report for the record.
+     * @return Whether to continue segmenting, or terminate the operation prematurely.
+     * @throws E When there is an issue with processing the data.
+     */
+    SegmentationResult accept(WritableRecord record, ValidationReport report) throws E;
+  }
+
   /**
    * Implementations of this interface are records that can be written to an output stream.
    */
@@ -79,7 +208,10 @@ public class EdmExternalSegmenter implements AutoCloseable {
     String getRecordURI();
 
     /**
-     * Write the record to an output stream.
+     * Write the record to an output stream. Representations for which Jena has a streaming writer
+     * are written as a stream, without creating a model. For Turtle, this means that the output is
+     * in the 'blocks' style: the triples are grouped per subject, but blank nodes are not nested
+     * and lists are not abbreviated.
      *
      * @param outputStream   The stream to write the record to.
      * @param representation The desired representation to write the output in.
@@ -88,22 +220,100 @@ public class EdmExternalSegmenter implements AutoCloseable {
     void write(OutputStream outputStream, RdfRepresentation representation) throws IOException;
   }
 
-  private record WritableRecordFromModel(Resource record) implements WritableRecord {
+  /**
+   * A record that consists of the statements gathered from the dataset, without a model of its
+   * own. For representations that can be written as a stream, the statements are streamed
+   * directly to the writer. Otherwise, a model is created for writing.
+   *
+   * @param recordURI              The record URI.
+   * @param prefixes               The namespace prefixes to write.
+   * @param statements             The statements of the record, by subject, as they are in the
+   *                               dataset.
+   * @param legacyEdmXlmSchemaMode Whether to convert the statements for the legacy EDM XML schema.
+   */
+  private record WritableRecordFromStatements(String recordURI, Map<String, String> prefixes,
+                                              Map<Resource, List<Statement>> statements,
+                                              boolean legacyEdmXlmSchemaMode)
+      implements WritableRecord {
 
     @Override
     public String getRecordURI() {
-      return record.getURI();
+      return recordURI;
     }
 
     @Override
     public void write(OutputStream outputStream, RdfRepresentation representation)
         throws IOException {
+      final Lang lang = representation.getLang();
       try {
-        RDFDataMgr.write(outputStream, record.getModel(), representation.getLang());
+        if (StreamRDFWriter.registered(lang)) {
+          final StreamRDF stream = StreamRDFWriter.getWriterStream(outputStream, lang);
+          stream.start();
+          prefixes.forEach(stream::prefix);
+          forEachTriple(stream::triple);
+          stream.finish();
+        } else {
+          final Model model = toModel();
+          try {
+            RDFDataMgr.write(outputStream, model, lang);
+          } finally {
+            model.close();
+          }
+        }
       } catch (RuntimeException e) {
         throw new IOException("Could not write record.", e);
       }
     }
+
+    /**
+     * Performs an action for each triple of the record, converted for the legacy EDM XML schema
+     * mode if needed. As in {@link #toModel()}, each triple is only passed on once, even if the
+     * conversion makes two statements equal (e.g. <code>"1"^^xsd:int</code> and <code>"1"</code>).
+     *
+     * @param action The action to perform.
+     */
+    void forEachTriple(Consumer<Triple> action) {
+      if (!legacyEdmXlmSchemaMode) {
+        for (List<Statement> resourceStatements : statements.values()) {
+          for (Statement statement : resourceStatements) {
+            action.accept(statement.asTriple());
+          }
+        }
+        return;
+      }
+
+      // Converted statements can only become equal if they have the same subject, so we only need
+      // to remember the triples of one subject at a time.
+      final Set<Triple> subjectTriples = new HashSet<>();
+      for (List<Statement> resourceStatements : statements.values()) {
+        subjectTriples.clear();
+        for (Statement statement : resourceStatements) {
+          // Any model serves to create the legacy statement: we use the one of the statement.
+          final Triple triple = asLegacyStatement(statement, statement.getModel()).asTriple();
+          if (subjectTriples.add(triple)) {
+            action.accept(triple);
+          }
+        }
+      }
+    }
+
+    /**
+     * Creates a new model with the record. The caller should close the model.
+     *
+     * @return The model.
+     */
+    Model toModel() {
+      final Model recordModel = ModelFactory.createDefaultModel();
+      recordModel.setNsPrefixes(prefixes);
+      for (List<Statement> resourceStatements : statements.values()) {
+        for (Statement statement : resourceStatements) {
+          // Create a legacy version of the statement if needed.
+          recordModel.add(legacyEdmXlmSchemaMode ? asLegacyStatement(statement, recordModel)
+              : statement);
+        }
+      }
+      return recordModel;
+    }
   }
 
   /**
@@ -115,7 +325,80 @@ public class EdmExternalSegmenter implements AutoCloseable {
    *                               declarations and base direction statements from literals.
    */
   public EdmExternalSegmenter(boolean legacyEdmXlmSchemaMode) {
-    datasetModel = ModelFactory.createDefaultModel();
+    this(legacyEdmXlmSchemaMode, DEFAULT_MAX_SHARED_CLOSURE_SIZE, DEFAULT_MAX_CACHED_STATEMENTS,
+        null);
+  }
+
+  /**
+   * Constructor. Creates an empty dataset to which data can be added before segmentation.
+   *
+   * @param legacyEdmXlmSchemaMode Use this mode to indicate that the output should be acceptable
+   *                               for the legacy EDM XML schema (and transformation). This mode
+   *                               does not do the validation, but it will strip (most) data type
+   *                               declarations and base direction statements from literals.
+   * @param storageMode            The way in which the dataset is to be stored.
+   * @throws IOException In case the storage could not be set up.
+   */
+  public EdmExternalSegmenter(boolean legacyEdmXlmSchemaMode, StorageMode storageMode)
+      throws IOException {
+    this(legacyEdmXlmSchemaMode, storageMode, DEFAULT_MAX_SHARED_CLOSURE_SIZE,
+        DEFAULT_MAX_CACHED_STATEMENTS);
+  }
+
+  /**
+   * Constructor. Creates an empty dataset to which data can be added before segmentation.
+   *
+   * @param legacyEdmXlmSchemaMode See {@link #EdmExternalSegmenter(boolean, StorageMode)}.
+   * @param storageMode            The way in which the dataset is to be stored.
+   * @param maxSharedClosureSize   The largest number of statements reachable from a shared
+   *                               resource for which this content is cached (see
+   *                               {@link #DEFAULT_MAX_SHARED_CLOSURE_SIZE}). Must not be
+   *                               negative.
+   * @param maxCachedStatements    The largest total number of statements in the cache of shared
+   *                               content (see {@link #DEFAULT_MAX_CACHED_STATEMENTS}). Must not be
+   *                               negative: use 0 to disable the cache. The cache is only used if
+   *                               the dataset is stored in memory.
+   * @throws IOException In case the storage could not be set up.
+   */
+  public EdmExternalSegmenter(boolean legacyEdmXlmSchemaMode, StorageMode storageMode,
+      int maxSharedClosureSize, int maxCachedStatements) throws IOException {
+
+    // The bounds are checked before the storage is set up, so that nothing needs to be cleaned up.
+    this(legacyEdmXlmSchemaMode, requireNonNegativeBound(maxSharedClosureSize),
+        requireNonNegativeBound(maxCachedStatements), storageMode == StorageMode.DISK
+            ? Files.createTempDirectory("edm-ext-segmenter-") : null);
+  }
+
+  private static int requireNonNegativeBound(int bound) {
+    if (bound < 0) {
+      throw new IllegalArgumentException("The bounds of the cache can not be negative.");
+    }
+    return bound;
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param legacyEdmXlmSchemaMode See {@link #EdmExternalSegmenter(boolean, StorageMode)}.
+   * @param maxSharedClosureSize   See
+   *                               {@link #EdmExternalSegmenter(boolean, StorageMode, int, int)}.
+   * @param maxCachedStatements    See
+   *                               {@link #EdmExternalSegmenter(boolean, StorageMode, int, int)}.
+   * @param storageDirectory       The directory in which to store the dataset, or null if the
+   *                               dataset is to be stored in memory.
+   */
+  private EdmExternalSegmenter(boolean legacyEdmXlmSchemaMode, int maxSharedClosureSize,
+      int maxCachedStatements, Path storageDirectory) {
+    this.maxSharedClosureSize = maxSharedClosureSize;
+    this.maxCachedStatements = maxCachedStatements;
+    this.storageDirectory = storageDirectory;
+    if (storageDirectory != null) {
+      this.diskDataset = TDB2Factory.connectDataset(storageDirectory.toString());
+      this.datasetModel = diskDataset.getDefaultModel();
+    } else {
+      this.diskDataset = null;
+      this.datasetModel = ModelFactory.createDefaultModel();
+    }
     this.legacyEdmXlmSchemaMode = legacyEdmXlmSchemaMode;
   }
 
@@ -129,12 +412,95 @@ public class EdmExternalSegmenter implements AutoCloseable {
     // TODO be smarter about the base? Plan: use the same code as in RdfConversion. If no
     //  base is given, detect the default one in all statements we are copying. If there is an
     //  issue, we throw an exception.
-    RDFDataMgr.read(datasetModel, inputStream, null, representation.getLang());
+    beginTransaction(ReadWrite.WRITE);
+    try {
+      RDFDataMgr.read(datasetModel, inputStream, null, representation.getLang());
+      commitTransaction();
+    } finally {
+      endTransaction();
+      datasetIndex = null;
+      synchronized (sharedClosures) {
+        sharedClosures.clear();
+        cachedStatementCount = 0;
+      }
+    }
   }
 
+  /**
+   * Closes the dataset and, if it is stored on disk, removes the storage. Calling this method more
+   * than once has no effect.
+   */
   @Override
   public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
     datasetModel.close();
+    if (diskDataset != null) {
+
+      // Closing a TDB2 dataset does not release the database: TDB2 keeps a connection per
+      // location (with its open files and memory-mapped indexes) for the lifetime of the JVM, and
+      // there is no public API to release it. Without expelling it, every segmenter would leak
+      // that connection, and deleting its files may fail (e.g. on Windows) or leave a stale
+      // connection behind. The location is a temporary directory that only this instance uses,
+      // so expelling it cannot affect other users of TDB2.
+      diskDataset.close();
+      TDBInternal.expel(diskDataset.asDatasetGraph());
+      try (Stream<Path> paths = Files.walk(storageDirectory)) {
+        for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+          Files.delete(path);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not remove the dataset storage.", e);
+      }
+    }
+  }
+
+  /**
+   * Begins a transaction if the storage requires it (i.e. when the dataset is stored on disk).
+   * Transactions are bound to the current thread.
+   *
+   * @param readWrite The transaction mode.
+   */
+  private void beginTransaction(ReadWrite readWrite) {
+    if (diskDataset != null) {
+      diskDataset.begin(readWrite);
+    }
+  }
+
+  private void commitTransaction() {
+    if (diskDataset != null) {
+      diskDataset.commit();
+    }
+  }
+
+  private void endTransaction() {
+    if (diskDataset != null) {
+      diskDataset.end();
+    }
+  }
+
+  /**
+   * Begins a read transaction if the storage requires it (i.e. when the dataset is stored on disk)
+   * and the current thread is not in a transaction already. As transactions are bound to the
+   * current thread, reads can be nested this way: e.g. when an executor runs a record on the
+   * calling thread, or when a record consumer calls {@link #countRecords()}.
+   *
+   * @return Whether a transaction was begun. To be passed to {@link #endReadTransaction(boolean)}.
+   */
+  private boolean beginReadTransaction() {
+    if (diskDataset == null || diskDataset.isInTransaction()) {
+      return false;
+    }
+    diskDataset.begin(ReadWrite.READ);
+    return true;
+  }
+
+  private void endReadTransaction(boolean transactionBegun) {
+    if (transactionBegun) {
+      diskDataset.end();
+    }
   }
 
   /**
@@ -144,8 +510,13 @@ public class EdmExternalSegmenter implements AutoCloseable {
    */
   public int countRecords() {
     final AtomicInteger counter = new AtomicInteger();
-    consumeJenaIterator(datasetModel.listResourcesWithProperty(RDF.type, EDM_PROVIDED_CHO),
-        providedCHO -> counter.incrementAndGet());
+    final boolean transactionBegun = beginReadTransaction();
+    try {
+      consumeJenaIterator(datasetModel.listResourcesWithProperty(RDF.type, EDM_PROVIDED_CHO),
+          providedCHO -> counter.incrementAndGet());
+    } finally {
+      endReadTransaction(transactionBegun);
+    }
     return counter.get();
   }
 
@@ -159,19 +530,400 @@ public class EdmExternalSegmenter implements AutoCloseable {
   public <E extends Exception> void segment(RecordConsumer<E> consumer) throws E {
 
     // Iterate over the ProvidedCHO resources to extract the records.
-    final ResIterator iterator = datasetModel.listResourcesWithProperty(RDF.type, EDM_PROVIDED_CHO);
+    final boolean transactionBegun = beginReadTransaction();
     try {
-      while (iterator.hasNext()) {
-        final SegmentationResult writeResult = writeSingleRecord(iterator.next(), consumer);
-        if (writeResult == SegmentationResult.TERMINATE) {
-          break;
+      final ResIterator iterator = datasetModel.listResourcesWithProperty(RDF.type,
+          EDM_PROVIDED_CHO);
+      try {
+        while (iterator.hasNext()) {
+          final SegmentationResult writeResult = writeSingleRecord(iterator.next(), consumer);
+          if (writeResult == SegmentationResult.TERMINATE) {
+            break;
+          }
         }
+      } finally {
+        iterator.close();
       }
     } finally {
-      iterator.close();
+      endReadTransaction(transactionBegun);
     }
   }
 
+  /**
+   * <p>Segment the dataset into individual records in parallel. The records are extracted and
+   * delivered to the consumer on the provided executor, with at most <code>parallelism</code>
+   * records being processed at any time. The consumer is therefore called concurrently from
+   * multiple threads, and it must be thread-safe. This method returns when all records have been
+   * processed.
+   * </p>
+   * <p>When the consumer returns {@link SegmentationResult#TERMINATE} or throws an exception, no
+   * further records will be started. Records that are already being processed at that time will
+   * still be delivered to the consumer. The first exception thrown by the consumer is rethrown by
+   * this method.
+   * </p>
+   * <p>Any executor can be used, including one that runs records on the calling thread (such as a
+   * direct executor, or a thread pool with a caller-runs policy). If the dataset is stored on disk,
+   * each record is read in a transaction of the thread that processes it, or in the transaction
+   * that this thread is already in. The consumer may call the reading methods of this segmenter
+   * (such as {@link #countRecords()}), but it may not add data.
+   * </p>
+   *
+   * @param consumer    A (thread-safe) consumer for the individual records.
+   * @param executor    The executor on which to process the records.
+   * @param parallelism The maximum number of records to process at the same time. Must be
+   *                    positive.
+   * @param <E>         The exception that may be thrown by the record consumer.
+   * @throws E                    When something went wrong while consuming a record.
+   * @throws InterruptedException When the thread was interrupted while waiting to submit a
+   *                              record. The records that were already submitted are still
+   *                              processed before this exception is thrown.
+   */
+  public <E extends Exception> void segment(RecordConsumer<E> consumer, Executor executor,
+      int parallelism) throws E, InterruptedException {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("The parallelism must be positive.");
+    }
+
+    // Keep track of the number of records being processed, and whether we should stop.
+    final Semaphore permits = new Semaphore(parallelism);
+    final AtomicBoolean terminated = new AtomicBoolean(false);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    // Iterate over the ProvidedCHO resources and submit them for extraction. The dataset model is
+    // only read, so it can be accessed concurrently.
+    boolean allSubmitted = false;
+    final boolean transactionBegun = beginReadTransaction();
+    try {
+      final ResIterator iterator = datasetModel.listResourcesWithProperty(RDF.type,
+          EDM_PROVIDED_CHO);
+      try {
+        while (iterator.hasNext() && !terminated.get()) {
+          final Resource providedCHO = iterator.next();
+          permits.acquire();
+          try {
+            executor.execute(() -> {
+              try {
+                writeSingleRecordConcurrently(providedCHO, consumer, terminated, failure);
+              } finally {
+                permits.release();
+              }
+            });
+          } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+          }
+        }
+      } finally {
+        iterator.close();
+      }
+      allSubmitted = true;
+    } finally {
+
+      // Wait for all records to be processed. In case of failure (e.g. when the executor rejects
+      // a task or when we are interrupted), we also wait, as the records that were already
+      // submitted may still be reading the dataset. But then we don't start any more records.
+      if (!allSubmitted) {
+        terminated.set(true);
+      }
+      try {
+        permits.acquireUninterruptibly(parallelism);
+      } finally {
+        endReadTransaction(transactionBegun);
+      }
+    }
+
+    // Rethrow any exception that occurred.
+    EdmExternalSegmenter.<E>rethrow(failure.get());
+  }
+
+  private <E extends Exception> void writeSingleRecordConcurrently(Resource providedCHO,
+      RecordConsumer<E> consumer, AtomicBoolean terminated, AtomicReference<Throwable> failure) {
+    if (terminated.get()) {
+      return;
+    }
+    final boolean transactionBegun = beginReadTransaction();
+    try {
+      if (writeSingleRecord(providedCHO, consumer) == SegmentationResult.TERMINATE) {
+        terminated.set(true);
+      }
+    } catch (Exception | Error e) {
+      failure.compareAndSet(null, e);
+      terminated.set(true);
+    } finally {
+      endReadTransaction(transactionBegun);
+    }
+  }
+
+  /**
+   * Rethrows an exception that was thrown by the record consumer (so either of type E or
+   * unchecked).
+   *
+   * @param throwable The exception to rethrow. Can be null, in which case nothing happens.
+   * @param <E>       The exception that may be thrown by the record consumer.
+   * @throws E The exception, if it is of this type.
+   */
+  @SuppressWarnings("unchecked")
+  private static <E extends Exception> void rethrow(Throwable throwable) throws E {
+    if (throwable instanceof RuntimeException runtimeException) {
+      throw runtimeException;
+    }
+    if (throwable instanceof Error error) {
+      throw error;
+    }
+    if (throwable != null) {
+      throw (E) throwable;
+    }
+  }
+
+  /**
+   * Segment the dataset into individual records and validate each of them. The records are
+   * validated directly from their in-memory representation, without being serialized and parsed.
+   * Note that the validation applies to the records as they are delivered to the consumer (so
+   * after any conversion for the legacy EDM XML schema mode).
+   *
+   * @param validator The validator to validate the records with.
+   * @param consumer  A consumer for the individual records and their validation reports.
+   * @param <E>       The exception that may be thrown by the record consumer.
+   * @throws E When something went wrong while consuming a record.
+   */
+  public <E extends Exception> void segmentAndValidate(EdmExternalValidator validator,
+      ValidatedRecordConsumer<E> consumer) throws E {
+    segment(toRecordConsumer(validator, consumer));
+  }
+
+  /**
+   * Segment the dataset into individual records and validate each of them, in parallel. See
+   * {@link #segmentAndValidate(EdmExternalValidator, ValidatedRecordConsumer)} and
+   * {@link #segment(RecordConsumer, Executor, int)}.
+   *
+   * @param validator   The validator to validate the records with.
+   * @param consumer    A (thread-safe) consumer for the individual records and their validation
+   *                    reports.
+   * @param executor    The executor on which to process the records.
+   * @param parallelism The maximum number of records to process at the same time. Must be
+   *                    positive.
+   * @param <E>         The exception that may be thrown by the record consumer.
+   * @throws E                    When something went wrong while consuming a record.
+   * @throws InterruptedException When the thread was interrupted while waiting to submit a
+   *                              record. The records that were already submitted are still
+   *                              processed before this exception is thrown.
+   */
+  public <E extends Exception> void segmentAndValidate(EdmExternalValidator validator,
+      ValidatedRecordConsumer<E> consumer, Executor executor, int parallelism)
+      throws E, InterruptedException {
+    segment(toRecordConsumer(validator, consumer), executor, parallelism);
+  }
+
+  /**
+   * <p>Segment the dataset into individual records and write them all to a ZIP archive, with one
+   * entry per record. The entry names are the (URL-encoded) record URIs, with the file extension
+   * of the representation. The records are serialized in parallel on the provided executor, with
+   * at most <code>parallelism</code> records being serialized at any time. The calling thread
+   * writes the archive, with the records in the order in which they are found in the dataset.
+   * </p>
+   * <p>The output stream is not closed by this method, but the archive is finished. Records need
+   * a URI: if an <code>edm:ProvidedCHO</code> is a blank node, this method fails.
+   * </p>
+   *
+   * @param output         The stream to write the archive to.
+   * @param representation The representation in which to write the records.
+   * @param executor       The executor on which to serialize the records. As with
+   *                       {@link #segment(RecordConsumer, Executor, int)}, this may be an executor
+   *                       that runs records on the calling thread.
+   * @param parallelism    The maximum number of records to serialize at the same time. Must be
+   *                       positive.
+   * @throws IOException          When something went wrong while writing a record, or when an
+   *                              <code>edm:ProvidedCHO</code> is a blank node.
+   * @throws InterruptedException When the thread was interrupted while waiting for a record to be
+   *                              serialized.
+   */
+  public void segmentToZip(OutputStream output, RdfRepresentation representation,
+      Executor executor, int parallelism) throws IOException, InterruptedException {
+    final List<String> extensions = representation.getLang().getFileExtensions();
+    final String suffix = extensions.isEmpty() ? "" : ("." + extensions.getFirst());
+    final ZipOutputStream zipOutput = new ZipOutputStream(output);
+    segmentSerialized(
+        (record, recordIndex, recordOutput) -> record.write(recordOutput, representation),
+        (recordURI, data) -> {
+      zipOutput.putNextEntry(
+          new ZipEntry(URLEncoder.encode(recordURI, StandardCharsets.UTF_8) + suffix));
+      zipOutput.write(data);
+      zipOutput.closeEntry();
+    }, executor, parallelism);
+    zipOutput.finish();
+  }
+
+  /**
+   * <p>Segment the dataset into individual records and write them all to one N-Quads stream, with
+   * each record in its own named graph (of which the name is the record URI). The records are
+   * serialized in parallel on the provided executor, with at most <code>parallelism</code> records
+   * being serialized at any time. The calling thread writes the output, with the records in the
+   * order in which they are found in the dataset. Blank nodes get labels that are unique per
+   * record, so that records do not share blank nodes (even if they do in the dataset).
+   * </p>
+   * <p>The output stream is not closed by this method, but it is flushed. Records need a URI: if
+   * an <code>edm:ProvidedCHO</code> is a blank node, this method fails.
+   * </p>
+   *
+   * @param output      The stream to write the records to.
+   * @param executor    The executor on which to serialize the records. As with
+   *                    {@link #segment(RecordConsumer, Executor, int)}, this may be an executor
+   *                    that runs records on the calling thread.
+   * @param parallelism The maximum number of records to serialize at the same time. Must be
+   *                    positive.
+   * @throws IOException          When something went wrong while writing a record, or when an
+   *                              <code>edm:ProvidedCHO</code> is a blank node.
+   * @throws InterruptedException When the thread was interrupted while waiting for a record to be
+   *                              serialized.
+   */
+  public void segmentToNQuads(OutputStream output, Executor executor, int parallelism)
+      throws IOException, InterruptedException {
+    segmentSerialized((record, recordIndex, recordOutput) -> {
+
+      // Blank node labels are scoped to the whole file, so we make them unique per record: a
+      // blank node that is shared between records should not join their graphs when loaded.
+      final String labelPrefix = "r" + recordIndex + "_";
+      final Node graphName = NodeFactory.createURI(record.getRecordURI());
+      final StreamRDF stream = StreamRDFWriter.getWriterStream(recordOutput, RDFFormat.NQUADS);
+      stream.start();
+      record.forEachTriple(triple -> stream.quad(Quad.create(graphName,
+          withBlankNodeLabelPrefix(triple.getSubject(), labelPrefix), triple.getPredicate(),
+          withBlankNodeLabelPrefix(triple.getObject(), labelPrefix))));
+      stream.finish();
+    }, (recordURI, data) -> output.write(data), executor, parallelism);
+    output.flush();
+  }
+
+  private static Node withBlankNodeLabelPrefix(Node node, String labelPrefix) {
+    return node.isBlank() ? NodeFactory.createBlankNode(labelPrefix + node.getBlankNodeLabel())
+        : node;
+  }
+
+  /**
+   * Serializes a record, given its (zero-based) position in the output.
+   */
+  @FunctionalInterface
+  private interface RecordSerializer {
+
+    void serialize(WritableRecordFromStatements record, long recordIndex, OutputStream output)
+        throws IOException;
+  }
+
+  /**
+   * Writes a serialized record to the output.
+   */
+  @FunctionalInterface
+  private interface SerializedRecordWriter {
+
+    void write(String recordURI, byte[] data) throws IOException;
+  }
+
+  private record SerializedRecord(String recordURI, byte[] data) {
+
+  }
+
+  private void segmentSerialized(RecordSerializer serializer, SerializedRecordWriter writer,
+      Executor executor, int parallelism) throws IOException, InterruptedException {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("The parallelism must be positive.");
+    }
+
+    // Submit the records for serialization, keeping the submissions in order. Write the oldest
+    // one when we are at capacity. The dataset model is only read, so it can be accessed
+    // concurrently.
+    final ArrayDeque<CompletableFuture<SerializedRecord>> pending = new ArrayDeque<>();
+    final AtomicBoolean terminated = new AtomicBoolean(false);
+    final boolean transactionBegun = beginReadTransaction();
+    try {
+      final ResIterator iterator = datasetModel.listResourcesWithProperty(RDF.type,
+          EDM_PROVIDED_CHO);
+      try {
+        long nextRecordIndex = 0;
+        while (iterator.hasNext()) {
+          if (pending.size() >= parallelism) {
+            writeSerializedRecord(pending.removeFirst(), writer);
+          }
+          final Resource providedCHO = iterator.next();
+          final long recordIndex = nextRecordIndex++;
+          if (!providedCHO.isURIResource()) {
+            throw new IOException("Could not write record: the edm:ProvidedCHO " + providedCHO
+                + " is a blank node, but records need a URI.");
+          }
+          pending.addLast(CompletableFuture.supplyAsync(() -> terminated.get() ? null
+              : serializeSingleRecordConcurrently(providedCHO, recordIndex, serializer),
+              executor));
+        }
+      } finally {
+        iterator.close();
+      }
+      while (!pending.isEmpty()) {
+        writeSerializedRecord(pending.removeFirst(), writer);
+      }
+    } finally {
+
+      // In case of failure, prevent the serialization of records that have not started yet, and
+      // wait for the ones that have: they may still be reading the dataset (which may be closed
+      // as soon as we return). Their results and failures are no longer of interest.
+      terminated.set(true);
+      for (CompletableFuture<SerializedRecord> future : pending) {
+        try {
+          future.join();
+        } catch (CompletionException e) {
+          // Nothing to do: we are already failing.
+        }
+      }
+      endReadTransaction(transactionBegun);
+    }
+  }
+
+  private SerializedRecord serializeSingleRecordConcurrently(Resource providedCHO,
+      long recordIndex, RecordSerializer serializer) {
+    final boolean transactionBegun = beginReadTransaction();
+    try {
+      final ByteArrayOutputStream output = new ByteArrayOutputStream();
+      serializer.serialize(extractRecord(providedCHO), recordIndex, output);
+      return new SerializedRecord(providedCHO.getURI(), output.toByteArray());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write record.", e);
+    } finally {
+      endReadTransaction(transactionBegun);
+    }
+  }
+
+  private static void writeSerializedRecord(CompletableFuture<SerializedRecord> future,
+      SerializedRecordWriter writer) throws IOException, InterruptedException {
+    final SerializedRecord record;
+    try {
+      record = future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof UncheckedIOException uncheckedIOException) {
+        throw uncheckedIOException.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      if (e.getCause() instanceof Error error) {
+        throw error;
+      }
+      throw new IOException("Could not write record.", e.getCause());
+    }
+    writer.write(record.recordURI(), record.data());
+  }
+
+  private static <E extends Exception> RecordConsumer<E> toRecordConsumer(
+      EdmExternalValidator validator, ValidatedRecordConsumer<E> consumer) {
+
+    // The records we create are always gathered from the dataset. Validate them as a model.
+    return record -> {
+      final Model recordModel = ((WritableRecordFromStatements) record).toModel();
+      try {
+        return consumer.accept(record, validator.validateSingleRecord(recordModel));
+      } finally {
+        recordModel.close();
+      }
+    };
+  }
+
   /**
    * Writes a single record to the record consumer. The record is identified by a resource (the
    * <code>edm:ProvidedCHO</code>). This method will extract the record from the database model
@@ -185,22 +937,32 @@ public class EdmExternalSegmenter implements AutoCloseable {
    */
   private <E extends Exception> SegmentationResult writeSingleRecord(Resource providedCHO,
       RecordConsumer<E> consumer) throws E {
-    final Model recordModel = extractRecordToNewModel(providedCHO);
-    try {
-      final Resource record = recordModel.getResource(providedCHO.getURI());
-      return consumer.accept(new WritableRecordFromModel(record));
-    } finally {
-      recordModel.close();
-    }
+    return consumer.accept(extractRecord(providedCHO));
+  }
+
+  /**
+   * Extracts a record. This record is identified by a resource (the <code>edm:ProvidedCHO</code>).
+   * See {@link #gatherRecord(Resource)} for which content belongs to the record. The record keeps
+   * the gathered statements: no model is created for it.
+   *
+   * @param providedCHO The record to extract.
+   * @return The record.
+   */
+  private WritableRecordFromStatements extractRecord(Resource providedCHO) {
+    return new WritableRecordFromStatements(providedCHO.getURI(), datasetModel.getNsPrefixMap(),
+        gatherRecord(providedCHO), legacyEdmXlmSchemaMode);
   }
 
   /**
-   * <p>Extracts a record a new model. This record is identified by a resource (the
+   * <p>Gathers the statements of a record. This record is identified by a resource (the
    * <code>edm:ProvidedCHO</code>). This method will crawl the dataset model for all resources that
-   * belong to this record and add them to the new model. A record is defined as all content
-   * reachable from this <code>edm:ProvidedCHO</code> as well as from any
-   * <code>ore:Aggregation</code> that belongs to it. Care will be taken not to include other
-   * records (they will be referenced by IRI).
+   * belong to this record. A record is defined as all content reachable from this
+   * <code>edm:ProvidedCHO</code> as well as from any <code>ore:Aggregation</code> that belongs to
+   * it. Care will be taken not to include other records (they will be referenced by IRI).
+   * </p>
+   * <p>Resources that are referenced by more than one resource (such as contextual entities that
+   * are shared between records) are not crawled again for each record: the content reachable from
+   * them is cached (see {@link #getSharedClosure(Resource, DatasetIndex)}).
    * </p>
    * <p>Implementation note: We considered implementing this by a SPARQL query that would get
    * all reachable content in one go. This does not perform well. It seems to be that the issue is
@@ -209,58 +971,175 @@ public class EdmExternalSegmenter implements AutoCloseable {
    * optimized and performant.
    * </p>
    *
-   * @param providedCHO The record to extract.
-   * @return The new model.
+   * @param providedCHO The record to gather.
+   * @return The statements of the record, by subject, in the order in which they were found. The
+   * statements are those in the dataset (so without any conversion for the legacy EDM XML schema
+   * mode).
    */
-  private Model extractRecordToNewModel(Resource providedCHO) {
-
-    // Create a model for the record.
-    final Model recordModel = ModelFactory.createDefaultModel();
-    recordModel.setNsPrefixes(datasetModel.getNsPrefixMap());
+  private Map<Resource, List<Statement>> gatherRecord(Resource providedCHO) {
 
-    // Prepare copying: queue for processing and set of handled resources to avoid cycles.
-    final Set<Resource> handled = new HashSet<>();
+    // Prepare gathering: queue for processing.
+    final DatasetIndex index = getDatasetIndex();
+    final Map<Resource, List<Statement>> record = new LinkedHashMap<>();
     final ArrayDeque<Resource> queue = new ArrayDeque<>();
     queue.add(providedCHO);
     consumeJenaIterator(datasetModel.listResourcesWithProperty(EDM_AGGREGATED_CHO, providedCHO),
         queue::add);
 
-    // Perform the copying.
+    // Perform the gathering. The record map doubles as the set of handled resources.
     while (!queue.isEmpty()) {
       final Resource resource = queue.removeFirst();
-      if (!handled.add(resource)) {
+      if (record.containsKey(resource)) {
         continue;
       }
-      copyResourceAndAddLinkedResourcesToQueue(resource, queue::addLast, recordModel);
+      final Map<Resource, List<Statement>> sharedClosure =
+          resource.equals(providedCHO) ? null : getSharedClosure(resource, index);
+      if (sharedClosure != null) {
+        sharedClosure.forEach(record::putIfAbsent);
+      } else {
+        record.put(resource,
+            gatherResourceAndAddLinkedResourcesToQueue(resource, index.providedCHOs(),
+                queue::addLast));
+      }
     }
 
     // Done.
-    return recordModel;
+    return record;
   }
 
   /**
-   * Copy the resource (i.e., all triples with this resource as the subject) to the target model. If
-   * we find linked resources (as the object of one of the triples), add them to the queue for
-   * further processing. Note: a linked resource is not added if it has type edm:ProvidedCHO to
-   * avoid crossing over into other records.
+   * Gathers the resource (i.e., all triples with this resource as the subject). If we find linked
+   * resources (as the object of one of the triples), add them to the queue for further processing.
+   * Note: a linked resource is not added if it has type edm:ProvidedCHO to avoid crossing over into
+   * other records.
    *
-   * @param resource      The resource to copy.
+   * @param resource      The resource to gather.
+   * @param providedCHOs  The set of all resources with type edm:ProvidedCHO in the dataset.
    * @param queueAppender The operation of adding any linked resources to the queue.
-   * @param target        The model to which the resource is to be copied.
+   * @return The statements of the resource.
    */
-  private void copyResourceAndAddLinkedResourcesToQueue(Resource resource,
-      Consumer<Resource> queueAppender, Model target) {
+  private List<Statement> gatherResourceAndAddLinkedResourcesToQueue(Resource resource,
+      Set<Node> providedCHOs, Consumer<Resource> queueAppender) {
+    final List<Statement> statements = new ArrayList<>();
     consumeJenaIterator(resource.listProperties(), statement -> {
 
       // Add any object resource to the queue to be included later.
       final RDFNode object = statement.getObject();
-      if (object.isResource() && !object.asResource().hasProperty(RDF.type, EDM_PROVIDED_CHO)) {
+      if (object.isResource() && !providedCHOs.contains(object.asNode())) {
         queueAppender.accept(object.asResource());
       }
 
-      // Add the statement to the target model. Create a legacy version of the statement if needed.
-      target.add(this.legacyEdmXlmSchemaMode ? asLegacyStatement(statement, target) : statement);
+      // Keep the statement.
+      statements.add(statement);
     });
+    return statements;
+  }
+
+  /**
+   * <p>Gets the index of the dataset: the set of all resources with type edm:ProvidedCHO and, if
+   * the dataset is in memory, the set of resources that are referenced by more than one resource.
+   * The index is computed once (until data is added), so that checking whether a resource is a
+   * record or is shared does not require a lookup in the dataset. This method should be called
+   * inside a (read) transaction.
+   * </p>
+   * <p>If the dataset is stored on disk, the shared resources are not determined, as this requires
+   * memory in proportion to the size of the dataset.
+   * </p>
+   *
+   * @return The index (with unmodifiable sets).
+   */
+  private DatasetIndex getDatasetIndex() {
+    DatasetIndex result = datasetIndex;
+    if (result == null) {
+      synchronized (this) {
+        result = datasetIndex;
+        if (result == null) {
+          final Graph graph = datasetModel.getGraph();
+          final Set<Node> providedCHONodes = new HashSet<>();
+          consumeJenaIterator(graph.find(Node.ANY, RDF.type.asNode(),
+              EDM_PROVIDED_CHO.asNode()), triple -> providedCHONodes.add(triple.getSubject()));
+          final Set<Node> sharedResources = new HashSet<>();
+          if (diskDataset == null) {
+
+            // Find the resources with (at least) two different subjects referencing them.
+            final Map<Node, Node> firstReferencingSubjects = new HashMap<>();
+            consumeJenaIterator(graph.find(), triple -> {
+              if (!triple.getObject().isLiteral()) {
+                final Node firstSubject = firstReferencingSubjects.putIfAbsent(
+                    triple.getObject(), triple.getSubject());
+                if (firstSubject != null && !firstSubject.equals(triple.getSubject())) {
+                  sharedResources.add(triple.getObject());
+                }
+              }
+            });
+          }
+          result = new DatasetIndex(Collections.unmodifiableSet(providedCHONodes),
+              Collections.unmodifiableSet(sharedResources));
+          datasetIndex = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * <p>Gets the content reachable from a resource (without crossing over into records), if the
+   * resource is shared, i.e. referenced by more than one resource. This content is the same for
+   * each record that references the resource, so it is cached and reused. The cache is bounded,
+   * both in the size of the content per resource and in the total number of statements: the least
+   * recently used content is evicted first.
+   * </p>
+   * <p>This method is thread-safe.</p>
+   *
+   * @param resource The resource.
+   * @param index    The index of the dataset.
+   * @return The statements reachable from the resource, by subject, or null if the resource is not
+   * shared.
+   */
+  private Map<Resource, List<Statement>> getSharedClosure(Resource resource, DatasetIndex index) {
+
+    // Check whether the resource is shared, and whether it is in the cache.
+    if (!index.sharedResources().contains(resource.asNode())) {
+      return null;
+    }
+    synchronized (sharedClosures) {
+      final SharedClosure cachedClosure = sharedClosures.get(resource.asNode());
+      if (cachedClosure != null) {
+        return cachedClosure.statements();
+      }
+    }
+
+    // Compute the closure and cache it if it is not too large.
+    final Map<Resource, List<Statement>> closure = new LinkedHashMap<>();
+    final ArrayDeque<Resource> queue = new ArrayDeque<>();
+    queue.add(resource);
+    int size = 0;
+    while (!queue.isEmpty()) {
+      final Resource linkedResource = queue.removeFirst();
+      if (!closure.containsKey(linkedResource)) {
+        final List<Statement> statements = gatherResourceAndAddLinkedResourcesToQueue(
+            linkedResource, index.providedCHOs(), queue::addLast);
+        closure.put(linkedResource, Collections.unmodifiableList(statements));
+        size += statements.size();
+      }
+    }
+    final Map<Resource, List<Statement>> result = Collections.unmodifiableMap(closure);
+    if (size <= maxSharedClosureSize && size <= maxCachedStatements) {
+      cacheSharedClosure(resource.asNode(), new SharedClosure(result, size));
+    }
+    return result;
+  }
+
+  private void cacheSharedClosure(Node node, SharedClosure closure) {
+    synchronized (sharedClosures) {
+      final SharedClosure previous = sharedClosures.put(node, closure);
+      cachedStatementCount += closure.size() - (previous == null ? 0 : previous.size());
+      final Iterator<SharedClosure> eldest = sharedClosures.values().iterator();
+      while (cachedStatementCount > maxCachedStatements) {
+        cachedStatementCount -= eldest.next().size();
+        eldest.remove();
+      }
+    }
   }
 
   /**
@@ -3,49 +3,100 @@ package eu.europeana.metis.edm.ext.schema;
 import eu.europeana.metis.common.rdf.RdfBaseUrlUtils;
 import eu.europeana.metis.common.rdf.RdfRepresentation;
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphUtil;
 import org.apache.jena.graph.Node;
-import org.apache.jena.query.QueryExecution;
-import org.apache.jena.query.QueryExecutionFactory;
-import org.apache.jena.query.QueryFactory;
-import org.apache.jena.query.ResultSet;
+import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
-import org.apache.jena.rdf.model.RDFNode;
-import org.apache.jena.rdf.model.Resource;
-import org.apache.jena.reasoner.ReasonerRegistry;
 import org.apache.jena.riot.Lang;
-import org.apache.jena.shacl.ShaclValidator;
-import org.apache.jena.shacl.Shapes;
+import org.apache.jena.riot.RDFParserBuilder;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.shacl.parser.Shape;
+import org.apache.jena.shacl.validation.ReportEntry;
 import org.apache.jena.sparql.path.P_Link;
 import org.apache.jena.sparql.path.Path;
 import org.apache.jena.sparql.path.PathVisitorBase;
+import org.apache.jena.vocabulary.RDF;
 
 /**
- * This class provides EDM external validation.
+ * This class provides EDM external validation. Instances of this class are thread-safe: they can
+ * be used to validate multiple records concurrently. See {@link EdmExternalBatchValidator} for
+ * validating large numbers of records in parallel. The progress of the validations can be
+ * monitored using a {@link ValidationListener}. The work spent on records with many issues can be
+ * limited using {@link ValidationOptions}.
  */
 public class EdmExternalValidator {
 
-  // Only access this through the synchronized getter.
-  private static Shapes shapes = null;
+  private static final Node ORE_AGGREGATION =
+      NodeFactory.createURI("http://www.openarchives.org/ore/terms/Aggregation");
 
-  private static synchronized Shapes getShapes() {
-    if (shapes == null) {
-      final Model shapesModel = ModelFactory.createDefaultModel()
-          .read("schema/edm_ext_shacl_shapes.ttl", Lang.TTL.getLabel());
-      final Model enhancedShapeModel = ModelFactory
-          .createInfModel(ReasonerRegistry.getOWLReasoner(), shapesModel);
-      shapes = Shapes.parse(enhancedShapeModel);
-    }
-    return shapes;
+  private final ValidationListener listener;
+  private final ValidationResultCache cache;
+  private final ValidationOptions options;
+
+  /**
+   * Constructor.
+   */
+  public EdmExternalValidator() {
+    this(ValidationListener.NO_OP);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param listener The listener to notify of the progress of validations. If the validator is
+   *                 used concurrently, the listener needs to be thread-safe.
+   */
+  public EdmExternalValidator(ValidationListener listener) {
+    this(listener, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param listener The listener to notify of the progress of validations. If the validator is
+   *                 used concurrently, the listener needs to be thread-safe.
+   * @param cache    The cache for validation results of serialized records. Can be null, in which
+   *                 case no caching takes place. If a result is taken from the cache, the listener
+   *                 is only notified of the completion of the record, not of the phases.
+   */
+  public EdmExternalValidator(ValidationListener listener, ValidationResultCache cache) {
+    this(listener, cache, ValidationOptions.DEFAULT);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param listener The listener to notify of the progress of validations. If the validator is
+   *                 used concurrently, the listener needs to be thread-safe.
+   * @param cache    The cache for validation results of serialized records. Can be null, in which
+   *                 case no caching takes place. If a result is taken from the cache, the listener
+   *                 is only notified of the completion of the record, not of the phases.
+   * @param options  The validation options.
+   */
+  public EdmExternalValidator(ValidationListener listener, ValidationResultCache cache,
+      ValidationOptions options) {
+    this.listener = listener;
+    this.cache = cache;
+    this.options = options;
   }
 
   private static String toString(Node node) {
@@ -94,63 +145,404 @@ public class EdmExternalValidator {
    * @return A report with found validation issues.
    */
   public ValidationReport validateSingleRecord(InputStream record, RdfRepresentation representation) {
+    final long start = System.nanoTime();
+    if (cache != null) {
+      return validateSingleRecordWithCache(record, representation, start);
+    }
+    final CountingInputStream countingRecord = new CountingInputStream(record);
+    final ValidationReport report = validateSingleRecordData(countingRecord, representation,
+        new ValidationReportCollector(options));
+    listener.recordCompleted(countingRecord.getCount(), System.nanoTime() - start, report);
+    return report;
+  }
+
+  /**
+   * Validates a single record, passing the results on to a sink as they are produced. This avoids
+   * having to keep all report items in memory. If this validator uses a cache, the report is
+   * obtained from the cache (or computed) in full and then passed on to the sink. The report that
+   * is passed to the listener contains no items.
+   *
+   * @param record         The record to validate.
+   * @param representation The representation of the record.
+   * @param sink           The sink to receive the results.
+   * @param <E>            The exception that may be thrown by the sink.
+   * @throws E When something went wrong while processing the results.
+   */
+  public <E extends Exception> void validateSingleRecord(InputStream record,
+      RdfRepresentation representation, ValidationReportSink<E> sink) throws E {
+    if (cache != null) {
+      sendToSink(validateSingleRecord(record, representation), sink);
+      return;
+    }
+    final long start = System.nanoTime();
+    final CountingInputStream countingRecord = new CountingInputStream(record);
+    final ValidationReportCollector collector = new ValidationReportCollector(options, sink);
+    final ValidationReport report =
+        validateSingleRecordData(countingRecord, representation, collector);
+    completeInSink(report, collector, sink);
+    listener.recordCompleted(countingRecord.getCount(), System.nanoTime() - start, report);
+  }
+
+  private ValidationReport validateSingleRecordWithCache(InputStream record,
+      RdfRepresentation representation, long start) {
+
+    // We need the complete record to compute the cache key.
+    final byte[] recordBytes;
+    try {
+      recordBytes = record.readAllBytes();
+    } catch (IOException e) {
+      final ValidationReport report = new ValidationReport(null, ValidationIssueSeverity.ERROR,
+          List.of(new ValidationReportItem(null, null, null,
+              "Could not read input: " + e.getMessage(), ValidationIssueSeverity.ERROR)));
+      listener.recordCompleted(-1, System.nanoTime() - start, report);
+      return report;
+    }
+    final ValidationReport report = cache.getOrCompute(recordBytes, representation, options,
+        () -> validateSingleRecordData(new ByteArrayInputStream(recordBytes), representation,
+            new ValidationReportCollector(options)));
+    listener.recordCompleted(recordBytes.length, System.nanoTime() - start, report);
+    return report;
+  }
+
+  private ValidationReport validateSingleRecordData(InputStream record,
+      RdfRepresentation representation, ValidationReportCollector collector) {
     if (representation == RdfRepresentation.XML) {
 
-      // If we have an XML record, we need to normalize and pre-validate first.
-      final List<ValidationReportItem> preValidationItems = new ArrayList<>();
+      // If we have an XML record, we need to normalize and pre-validate first. The pre-validation
+      // items are found while the record is being parsed. Once they reach the limits of the
+      // options, we stop reading the record: the remaining phases would be skipped anyway.
       try (InputStream normalizedRecord = RdfXmlPreValidationUtils.normalizeAndPreValidateXmlData(
-          record, preValidationItems::add, true)) {
-        final ValidationReport report = validateSingleNormalizedRecord(normalizedRecord,
-            representation.getLang());
-        return ValidationReport.merge(report, preValidationItems);
+          record, collector::addTrailing, true, listener)) {
+        return validateSingleNormalizedRecord(
+            new StoppableInputStream(normalizedRecord, collector::shouldContinue),
+            representation.getLang(), collector);
       } catch (IOException e) {
-        preValidationItems.add(new ValidationReportItem(null, null, null,
+        collector.add(new ValidationReportItem(null, null, null,
             "Could not parse XML input: " + e.getMessage(), ValidationIssueSeverity.ERROR));
-        return new ValidationReport(null, ValidationIssueSeverity.ERROR, preValidationItems);
+        return collector.toReport(null);
       }
     } else {
 
       // No normalization needed: proceed as per usual.
-      return validateSingleNormalizedRecord(record, representation.getLang());
+      return validateSingleNormalizedRecord(record, representation.getLang(), collector);
     }
   }
 
-  private ValidationReport validateSingleNormalizedRecord(InputStream record, Lang lang) {
+  /**
+   * Validates a single record that is already available as a model. This avoids having to
+   * serialize and parse the record (e.g. when the record is the result of segmentation, see
+   * {@link EdmExternalSegmenter#segmentAndValidate(EdmExternalValidator,
+   * EdmExternalSegmenter.ValidatedRecordConsumer)}). Note that the XML-specific pre-validation is
+   * not applicable. The model is not changed.
+   *
+   * @param record The record to validate.
+   * @return A report with found validation issues.
+   */
+  public ValidationReport validateSingleRecord(Model record) {
 
-    // Parse the model
+    // Collect the information needed for the global analysis from the model.
+    final long start = System.nanoTime();
+    final ValidationReport report = validateParsedRecord(record, collectRecordStructure(record),
+        new ValidationReportCollector(options));
+    listener.recordCompleted(-1, System.nanoTime() - start, report);
+    return report;
+  }
+
+  /**
+   * Validates a single record that is already available as a model, passing the results on to a
+   * sink as they are produced (see {@link #validateSingleRecord(Model)} and
+   * {@link #validateSingleRecord(InputStream, RdfRepresentation, ValidationReportSink)}).
+   *
+   * @param record The record to validate.
+   * @param sink   The sink to receive the results.
+   * @param <E>    The exception that may be thrown by the sink.
+   * @throws E When something went wrong while processing the results.
+   */
+  public <E extends Exception> void validateSingleRecord(Model record,
+      ValidationReportSink<E> sink) throws E {
+    final long start = System.nanoTime();
+    final ValidationReportCollector collector = new ValidationReportCollector(options, sink);
+    final ValidationReport report =
+        validateParsedRecord(record, collectRecordStructure(record), collector);
+    completeInSink(report, collector, sink);
+    listener.recordCompleted(-1, System.nanoTime() - start, report);
+  }
+
+  private static <E extends Exception> void sendToSink(ValidationReport report,
+      ValidationReportSink<E> sink) throws E {
+    for (ValidationReportItem item : report.reportItems()) {
+      sink.reportItem(item);
+    }
+    sink.reportCompleted(report.recordId(), report.severity(), report.truncated());
+  }
+
+  private static <E extends Exception> void completeInSink(ValidationReport report,
+      ValidationReportCollector collector, ValidationReportSink<E> sink) throws E {
+    if (collector.getSinkFailure() != null) {
+      EdmExternalValidator.<E>rethrow(collector.getSinkFailure());
+    }
+    sink.reportCompleted(report.recordId(), report.severity(), report.truncated());
+  }
+
+  /**
+   * Rethrows an exception that was thrown by a sink (so either of type E or a runtime exception).
+   *
+   * @param exception The exception.
+   * @param <E>       The exception that may be thrown by the sink.
+   * @throws E The exception, if it is of this type.
+   */
+  @SuppressWarnings("unchecked")
+  private static <E extends Exception> void rethrow(Exception exception) throws E {
+    if (exception instanceof RuntimeException runtimeException) {
+      throw runtimeException;
+    }
+    throw (E) exception;
+  }
+
+  private ValidationReport validateSingleNormalizedRecord(InputStream record, Lang lang,
+      ValidationReportCollector collector) {
+
+    // Parse the model. While parsing, collect the information needed for the global analysis.
     final Model model = ModelFactory.createDefaultModel();
+    final RecordStructureCollector recordStructure =
+        new RecordStructureCollector(StreamRDFLib.graph(model.getGraph()));
+    final long start = System.nanoTime();
     try {
-      model.read(record, RdfBaseUrlUtils.DEFAULT_BASE_URL, lang.getLabel());
+      RDFParserBuilder.create().source(record).lang(lang)
+          .base(RdfBaseUrlUtils.DEFAULT_BASE_URL).parse(recordStructure);
     } catch (RuntimeException e) {
-      return new ValidationReport(null, ValidationIssueSeverity.ERROR,
-          List.of(new ValidationReportItem(null, null, null,
-              "Could not parse input: " + e.getMessage(), ValidationIssueSeverity.ERROR)));
+
+      // If the pre-validation reached the limits, the parser failed because we stopped reading.
+      if (!collector.shouldContinue()) {
+        return stopAfterPreValidation(start, model, collector);
+      }
+      completePhase(listener, ValidationPhase.PARSING, start, model.getGraph(), 1);
+      collector.add(new ValidationReportItem(null, null, null,
+          "Could not parse input: " + e.getMessage(), ValidationIssueSeverity.ERROR));
+      return collector.toReport(null);
     }
 
-    // Global analysis: parse and analyze the model as a whole.
-    final Pair<String, ValidationReportItem> idCheck = checkForUniqueProvidedCHOId(model);
-    final List<ValidationReportItem> unsupportedTypeCheck = checkForUnsupportedTypes(model);
-    final List<ValidationReportItem> orphanedResourcesCheck = checkForOrphanedResources(model);
+    // Nothing else than the pre-validation adds items before this point.
+    if (!collector.shouldContinue()) {
+      return stopAfterPreValidation(start, model, collector);
+    }
+    completePhase(listener, ValidationPhase.PARSING, start, model.getGraph(), 0);
+    return validateParsedRecord(model, recordStructure, collector);
+  }
+
+  /**
+   * Completes the validation of a record for which the pre-validation reached the limits of the
+   * options (see {@link ValidationOptions}): the global checks and the shape validation are skipped
+   * and the (truncated) report contains only the pre-validation items. The record ID is not known.
+   *
+   * @param start     The start of the parsing phase.
+   * @param model     The model, as far as it was parsed.
+   * @param collector The collector with the pre-validation items.
+   * @return The report.
+   */
+  private ValidationReport stopAfterPreValidation(long start, Model model,
+      ValidationReportCollector collector) {
+    completePhase(listener, ValidationPhase.PARSING, start, model.getGraph(), 0);
+    collector.markTruncated();
+    return collector.toReport(null);
+  }
+
+  private ValidationReport validateParsedRecord(Model model,
+      RecordStructureCollector recordStructure, ValidationReportCollector collector) {
+
+    // Global analysis: analyze the model as a whole.
+    final String recordId = performGlobalChecks(model, recordStructure, listener, collector);
+
+    // Local analysis: validate the provided shapes, unless the options tell us to skip this.
+    if (!collector.shouldContinue()
+        || (options.skipShaclAfterGlobalFailure() && collector.isErrorFound())) {
+      collector.markTruncated();
+    } else {
+      performShaclValidation(model, null, collector);
+    }
+
+    // Compile and run report.
+    return collector.toReport(recordId);
+  }
+
+  /**
+   * <p>Validates a new version of a record, given the previous version and its report. Only the
+   * resources that are affected by the changes between the versions (see {@link RecordChanges})
+   * are validated against the shapes again: the shape results for the other resources are taken
+   * from the previous report. The global checks (ID, types and orphans) are always performed on
+   * the new version in full: they are linear passes over the record, and cheap compared to the
+   * shape validation.
+   * </p>
+   * <p>The result is the same as that of {@link #validateSingleRecord(Model)} for the new version,
+   * except possibly for the order of the report items. If the changes can not be analyzed reliably
+   * (e.g. if blank nodes are involved), if the previous report does not match the previous version
+   * or is truncated, or if this validator does not use the default {@link ValidationOptions}, a
+   * full validation is performed instead. Note that the previous report needs to be the
+   * result of {@link #validateSingleRecord(Model)} or of the validation of a record that is not in
+   * RDF/XML: reports of RDF/XML records include the results of the XML pre-validation, which can
+   * not be derived from a model. The models are not changed.
+   * </p>
+   *
+   * @param previousRecord The previous version of the record.
+   * @param previousReport The report of the previous version of the record.
+   * @param newRecord      The new version of the record.
+   * @return A report with found validation issues for the new version of the record.
+   */
+  public ValidationReport revalidateSingleRecord(Model previousRecord,
+      ValidationReport previousReport, Model newRecord) {
+
+    // Only complete reports can be updated incrementally.
+    if (previousReport.truncated() || !ValidationOptions.DEFAULT.equals(options)) {
+      return validateSingleRecord(newRecord);
+    }
 
-    // Local analysis: validate the provided shapes. First, add the resource hierarchy.
-    SupportedResourceTypes.get().addTypeHierarchyToModel(model);
-    final List<ValidationReportItem> localReportItems = new ArrayList<>();
-    ShaclValidator.get().validate(getShapes(), model.getGraph()).getEntries().forEach(entry ->
-        localReportItems.add(new ValidationReportItem(toString(entry.focusNode()),
-            toString(entry.resultPath()), toString(entry.value()), entry.message(),
-            ValidationIssueSeverity.forSeverity(entry.severity()))));
+    // Find the resources affected by the changes.
+    final long start = System.nanoTime();
+    final RecordChanges changes = RecordChanges.compute(previousRecord.getGraph(),
+        newRecord.getGraph());
+    if (changes == null) {
+      return validateSingleRecord(newRecord);
+    }
+
+    // Obtain the shape results from the previous report, by removing the global check results.
+    final ValidationReportCollector previousGlobalChecks =
+        new ValidationReportCollector(ValidationOptions.DEFAULT);
+    performGlobalChecks(previousRecord, collectRecordStructure(previousRecord),
+        ValidationListener.NO_OP, previousGlobalChecks);
+    final List<ValidationReportItem> previousShaclItems = removeItems(
+        previousReport.reportItems(), previousGlobalChecks.toReport(null).reportItems());
+    if (previousShaclItems == null) {
+      return validateSingleRecord(newRecord);
+    }
+
+    // Keep the shape results for the resources that are not affected.
+    final Set<Node> affectedNodes = changes.getAffectedNodes();
+    final Set<String> affectedSubjects = new HashSet<>();
+    affectedNodes.forEach(node -> affectedSubjects.add(toString(node)));
+    final List<ValidationReportItem> retainedShaclItems = previousShaclItems.stream()
+        .filter(item -> item.subject() == null || !affectedSubjects.contains(item.subject()))
+        .toList();
+
+    // Perform the global checks on the new version, and validate the affected resources.
+    final ValidationReportCollector collector = new ValidationReportCollector(options);
+    final String recordId = performGlobalChecks(newRecord, collectRecordStructure(newRecord),
+        listener, collector);
+    collector.addAll(retainedShaclItems);
+    performShaclValidation(newRecord, affectedNodes::contains, collector);
 
     // Compile and run report.
-    final List<ValidationReportItem> allReportItems = new ArrayList<>();
-    Optional.ofNullable(idCheck.getRight()).ifPresent(allReportItems::add);
-    allReportItems.addAll(unsupportedTypeCheck);
-    allReportItems.addAll(orphanedResourcesCheck);
-    allReportItems.addAll(localReportItems);
-    return ValidationReport.of(idCheck.getLeft(), allReportItems);
+    final ValidationReport report = collector.toReport(recordId);
+    listener.recordCompleted(-1, System.nanoTime() - start, report);
+    return report;
   }
 
-  private Pair<String, ValidationReportItem> checkForUniqueProvidedCHOId(Model model) {
-    final Set<String> ids = EdmExternalRecordIdExtractor.extractRecordIds(model);
+  /**
+   * Removes the given items from a list of items, taking into account multiplicity.
+   *
+   * @return The remaining items, or null if not all items to remove are present.
+   */
+  private static List<ValidationReportItem> removeItems(List<ValidationReportItem> items,
+      List<ValidationReportItem> itemsToRemove) {
+    final Map<ValidationReportItem, Integer> countsToRemove = new HashMap<>();
+    itemsToRemove.forEach(item -> countsToRemove.merge(item, 1, Integer::sum));
+    final List<ValidationReportItem> result = new ArrayList<>();
+    for (ValidationReportItem item : items) {
+      final Integer count = countsToRemove.get(item);
+      if (count == null) {
+        result.add(item);
+      } else if (count == 1) {
+        countsToRemove.remove(item);
+      } else {
+        countsToRemove.put(item, count - 1);
+      }
+    }
+    return countsToRemove.isEmpty() ? result : null;
+  }
+
+  private static RecordStructureCollector collectRecordStructure(Model record) {
+    final RecordStructureCollector recordStructure =
+        new RecordStructureCollector(StreamRDFLib.sinkNull());
+    record.getGraph().find().forEachRemaining(recordStructure::triple);
+    return recordStructure;
+  }
+
+  /**
+   * Performs the global checks, adding the found items to the collector. Checks are skipped as
+   * soon as the collector indicates that the validation should not continue.
+   *
+   * @return The record ID, or null if it could not be determined.
+   */
+  private String performGlobalChecks(Model model,
+      RecordStructureCollector recordStructure, ValidationListener listener,
+      ValidationReportCollector collector) {
+    final Graph graph = model.getGraph();
+    long phaseStart = System.nanoTime();
+    final Pair<String, ValidationReportItem> idCheck = checkForUniqueProvidedCHOId(recordStructure);
+    phaseStart = completePhase(listener, ValidationPhase.ID_CHECK, phaseStart, graph,
+        idCheck.getRight() == null ? 0 : 1);
+    if (idCheck.getRight() != null && !collector.add(idCheck.getRight())) {
+      collector.markTruncated();
+      return idCheck.getLeft();
+    }
+    final List<ValidationReportItem> unsupportedTypeCheck =
+        checkForUnsupportedTypes(recordStructure);
+    phaseStart = completePhase(listener, ValidationPhase.TYPE_CHECK, phaseStart, graph,
+        unsupportedTypeCheck.size());
+    if (!collector.addAll(unsupportedTypeCheck)) {
+      collector.markTruncated();
+      return idCheck.getLeft();
+    }
+    final List<ValidationReportItem> orphanedResourcesCheck = checkForOrphanedResources(model);
+    completePhase(listener, ValidationPhase.ORPHAN_CHECK, phaseStart, graph,
+        orphanedResourcesCheck.size());
+    collector.addAll(orphanedResourcesCheck);
+    return idCheck.getLeft();
+  }
+
+  /**
+   * Validates the record against the shapes, adding the found items to the collector (as long as
+   * the collector indicates that the validation should continue).
+   */
+  private void performShaclValidation(Model model, Predicate<Node> focusNodeFilter,
+      ValidationReportCollector collector) {
+
+    // We validate a view of the model that includes the resource hierarchy (without copying the
+    // hierarchy into the model). We only validate the shapes that target types in the record.
+    final Graph graph = model.getGraph();
+    long phaseStart = System.nanoTime();
+    final Graph modelWithTypeHierarchy = SupportedResourceTypes.get().withTypeHierarchy(graph);
+    phaseStart = completePhase(listener, ValidationPhase.TYPE_HIERARCHY, phaseStart, graph, 0);
+    final Set<Shape> selectedShapes = ShapeTargetIndex.get().selectShapes(graph);
+    final Collection<ReportEntry> entries = ShaclRunner.validate(ValidationShapes.get(),
+        modelWithTypeHierarchy, listener, selectedShapes, focusNodeFilter).getEntries();
+    completePhase(listener, ValidationPhase.SHACL, phaseStart, graph, entries.size());
+    final Iterator<ReportEntry> iterator = entries.iterator();
+    while (iterator.hasNext()) {
+      final ReportEntry entry = iterator.next();
+      if (!collector.add(new ValidationReportItem(toString(entry.focusNode()),
+          toString(entry.resultPath()), toString(entry.value()), entry.message(),
+          ValidationIssueSeverity.forSeverity(entry.severity()))) && iterator.hasNext()) {
+        collector.markTruncated();
+        break;
+      }
+    }
+  }
+
+  /**
+   * Notifies the listener of the completion of a phase.
+   *
+   * @return The current time, to be used as the start of the next phase.
+   */
+  private static long completePhase(ValidationListener listener, ValidationPhase phase,
+      long phaseStart, Graph graph, int reportItemCount) {
+    final long now = System.nanoTime();
+    listener.phaseCompleted(phase, now - phaseStart, graph.size(), reportItemCount);
+    return now;
+  }
+
+  private Pair<String, ValidationReportItem> checkForUniqueProvidedCHOId(
+      RecordStructureCollector recordStructure) {
+    final Set<String> ids = recordStructure.getRecordIds();
     if (ids.isEmpty()) {
       return new ImmutablePair<>(null, new ValidationReportItem(null, null, null,
           "No unique provided CHO ID found.", ValidationIssueSeverity.ERROR));
@@ -163,74 +555,153 @@ public class EdmExternalValidator {
         RdfBaseUrlUtils.undoResolutionAgainstDefaultBaseUrl(ids.iterator().next()), null);
   }
 
-  private List<ValidationReportItem> checkForUnsupportedTypes(Model model) {
-
-    // Check whether the type is declared and supported. We query for a mapping from all
-    // resources to their type (or absence thereof). We then cross-check with the supported types.
-    // Note that we limit this to resources that the model makes any statements about, not resources
-    // that are just external references (and may be dereferenced at a later point). We also
-    // consider blank nodes (anonymous resources).
-    final String typeMapQuery = """
-        PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>
-        SELECT DISTINCT ?resource ?type
-        WHERE {
-            ?resource ?pred ?object .
-            OPTIONAL { ?resource rdf:type ?type } .
-        }""";
-    try (QueryExecution typeMapQueryExecution = QueryExecutionFactory
-        .create(QueryFactory.create(typeMapQuery), model)) {
-      final ResultSet results = typeMapQueryExecution.execSelect();
-      final List<ValidationReportItem> validationItems = new ArrayList<>();
-      results.forEachRemaining(result -> {
-        final Node resourceNode = result.get("resource").asNode();
-        final String type = Optional.ofNullable(result.get("type")).filter(RDFNode::isResource)
-            .map(RDFNode::asResource).map(Resource::getURI).orElse(null);
-        final String resourceString = resourceNode.isBlank() ? "Blank resource" : "Resource";
+  private List<ValidationReportItem> checkForUnsupportedTypes(
+      RecordStructureCollector recordStructure) {
+
+    // Check whether the type is declared and supported. We have a mapping from all resources to
+    // their types (or absence thereof). We then cross-check with the supported types. Note that we
+    // limit this to resources that the model makes any statements about, not resources that are
+    // just external references (and may be dereferenced at a later point). We also consider blank
+    // nodes (anonymous resources). Types that are not IRIs are treated as absent.
+    final Set<String> supportedTypes = SupportedResourceTypes.get().getSupportedResourceTypes();
+    final List<ValidationReportItem> validationItems = new ArrayList<>();
+    recordStructure.getTypesBySubject().forEach((resourceNode, typeNodes) -> {
+      final String resourceString = resourceNode.isBlank() ? "Blank resource" : "Resource";
+      final List<String> types = typeNodes.isEmpty() ? Collections.singletonList(null)
+          : typeNodes.stream().map(typeNode -> typeNode.isURI() ? typeNode.getURI() : null)
+              .toList();
+      for (String type : types) {
         if (type == null) {
           validationItems.add(new ValidationReportItem(toString(resourceNode), null, null,
               resourceString + " has no declared rdf:type.",
               ValidationIssueSeverity.ERROR));
-        } else if (!SupportedResourceTypes.get().getSupportedResourceTypes().contains(type)) {
+        } else if (!supportedTypes.contains(type)) {
           validationItems.add(new ValidationReportItem(toString(resourceNode), null, null,
               resourceString + " has unsupported rdf:type " + type + ".",
               ValidationIssueSeverity.ERROR));
         }
-      });
-      return validationItems;
-    }
+      }
+    });
+    return validationItems;
   }
 
-  private List<ValidationReportItem> checkForOrphanedResources(Model model) {
+  /**
+   * Checks for resources that are not reachable from an <code>ore:Aggregation</code>.
+   *
+   * @param model The record.
+   * @return The report items (warnings) for the orphaned resources.
+   */
+  static List<ValidationReportItem> checkForOrphanedResources(Model model) {
 
     // Check that there are no orphans: check that all resources are reachable from an aggregation
-    // by any path of properties. The (<>|!<>) construction is a common shorthand for 'any property'.
-    // Note that we limit this to resources that the model makes any statements about, not resources
-    // that are just external references (and may be dereferenced at a later point). We also
-    // consider blank nodes (anonymous resources) even though in the known representations it is
-    // not possible to have a blank node that is not referenced.
-    final String orphanDetectQuery = """
-        PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>
-        PREFIX ore: <http://www.openarchives.org/ore/terms/>
-        SELECT DISTINCT ?orphan
-        WHERE {
-            ?orphan ?pred ?object .
-            FILTER NOT EXISTS {
-                ?source (<>|!<>)* ?orphan .
-                ?source rdf:type ore:Aggregation .
-            } .
-        }""";
-    try (QueryExecution orphanDetectQueryExecution = QueryExecutionFactory
-        .create(QueryFactory.create(orphanDetectQuery), model)) {
-      final ResultSet results = orphanDetectQueryExecution.execSelect();
-      final List<ValidationReportItem> validationItems = new ArrayList<>();
-      results.forEachRemaining(result -> {
-        final Node orphanNode = result.get("orphan").asNode();
+    // by any path of properties. We do this in one pass over the graph, walking forward from all
+    // aggregations and marking every resource we encounter as reachable. This takes time linear in
+    // the size of the graph, as every resource is expanded at most once.
+    final Graph graph = model.getGraph();
+    final Set<Node> reachable = new HashSet<>();
+    final ArrayDeque<Node> queue = new ArrayDeque<>();
+    graph.find(Node.ANY, RDF.type.asNode(), ORE_AGGREGATION)
+        .forEachRemaining(triple -> queue.add(triple.getSubject()));
+    while (!queue.isEmpty()) {
+      final Node resource = queue.removeFirst();
+      if (reachable.add(resource)) {
+        graph.find(resource, Node.ANY, Node.ANY).forEachRemaining(triple -> {
+          if (!triple.getObject().isLiteral()) {
+            queue.addLast(triple.getObject());
+          }
+        });
+      }
+    }
+
+    // Report the resources that are not reachable. Note that we limit this to resources that the
+    // model makes any statements about, not resources that are just external references (and may
+    // be dereferenced at a later point). We also consider blank nodes (anonymous resources) even
+    // though in the known representations it is not possible to have a blank node that is not
+    // referenced.
+    final List<ValidationReportItem> validationItems = new ArrayList<>();
+    GraphUtil.listSubjects(graph, Node.ANY, Node.ANY).forEachRemaining(orphanNode -> {
+      if (!reachable.contains(orphanNode)) {
         final String resourceString = orphanNode.isBlank() ? "Blank resource" : "Resource";
         validationItems.add(new ValidationReportItem(toString(orphanNode), null, null,
             resourceString + " is orphaned: it is not linked from elsewhere in the data.",
             ValidationIssueSeverity.WARNING));
-      });
-      return validationItems;
+      }
+    });
+    return validationItems;
+  }
+
+  /**
+   * An input stream that ends (i.e. reports the end of the stream) as soon as a condition no longer
+   * holds. The underlying stream is not closed.
+   */
+  private static final class StoppableInputStream extends FilterInputStream {
+
+    private final BooleanSupplier shouldContinue;
+
+    StoppableInputStream(InputStream in, BooleanSupplier shouldContinue) {
+      super(in);
+      this.shouldContinue = shouldContinue;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return shouldContinue.getAsBoolean() ? super.read() : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      return shouldContinue.getAsBoolean() ? super.read(bytes, offset, length) : -1;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      return shouldContinue.getAsBoolean() ? super.skip(n) : 0;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return shouldContinue.getAsBoolean() ? super.available() : 0;
+    }
+  }
+
+  /**
+   * An input stream that counts the bytes that are read from it.
+   */
+  private static final class CountingInputStream extends FilterInputStream {
+
+    private long count = 0;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      final int result = super.read();
+      if (result >= 0) {
+        count++;
+      }
+      return result;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      final int result = super.read(bytes, offset, length);
+      if (result > 0) {
+        count += result;
+      }
+      return result;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      final long result = super.skip(n);
+      count += result;
+      return result;
+    }
+
+    long getCount() {
+      return count;
     }
   }
 }
@@ -0,0 +1,47 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import java.util.function.Supplier;
+
+/**
+ * <p>The result of loading something once, for use in a lazy initialization holder: either the
+ * loaded value or the exception with which the loading failed. If a static initializer throws an
+ * exception, the first access gets an {@link ExceptionInInitializerError} and every later access a
+ * {@link NoClassDefFoundError} without the original cause. Holding the result instead means that
+ * every access gets a descriptive exception with the original cause.
+ * </p>
+ *
+ * @param value   The loaded value. Null if the loading failed.
+ * @param failure The exception with which the loading failed. Null if it succeeded.
+ * @param <T>     The type of the loaded value.
+ */
+record LoadResult<T>(T value, RuntimeException failure) {
+
+  /**
+   * Loads the value.
+   *
+   * @param loader The loader of the value.
+   * @param <T>    The type of the loaded value.
+   * @return The result.
+   */
+  static <T> LoadResult<T> load(Supplier<T> loader) {
+    try {
+      return new LoadResult<>(loader.get(), null);
+    } catch (RuntimeException e) {
+      return new LoadResult<>(null, e);
+    }
+  }
+
+  /**
+   * Gets the loaded value.
+   *
+   * @param description A description of what was loaded, for the exception message.
+   * @return The value.
+   * @throws IllegalStateException If the loading failed. The cause is the original exception.
+   */
+  T get(String description) {
+    if (failure != null) {
+      throw new IllegalStateException("Could not load " + description + ".", failure);
+    }
+    return value;
+  }
+}
@@ -0,0 +1,186 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import eu.europeana.metis.common.rdf.RdfBaseUrlUtils;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * <p>This class extracts record IDs from N-Triples or N-Quads files without parsing the RDF. It
+ * scans the lines of a memory-mapped file at byte level, only looking for statements of the form
+ * <code>&lt;subject&gt; rdf:type edm:ProvidedCHO</code>. This is possible because in these formats
+ * every statement is on its own line, and every IRI is written out in full.
+ * </p>
+ * <p>The scanner does not validate the syntax beyond what it needs. If it encounters a construct
+ * that it can not interpret with certainty (e.g. escape sequences in IRIs or relative IRIs), it
+ * gives up, so that the caller can fall back to full parsing.
+ * </p>
+ */
+final class NTriplesRecordIdScanner {
+
+  private static final byte[] RDF_TYPE = "<http://www.w3.org/1999/02/22-rdf-syntax-ns#type>"
+      .getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] EDM_PROVIDED_CHO =
+      "<http://www.europeana.eu/schemas/edm/ProvidedCHO>".getBytes(StandardCharsets.US_ASCII);
+
+  // The maximum size of the part of the file that is mapped into memory at any time.
+  private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+  private NTriplesRecordIdScanner() {
+  }
+
+  /**
+   * Scans the file for record IDs.
+   *
+   * @param file The file to scan.
+   * @return The set of record IDs found, or an empty optional if the file could not be scanned
+   * with certainty.
+   * @throws IOException In case the file could not be read.
+   */
+  static Optional<Set<String>> scan(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      final long fileSize = channel.size();
+      final Set<String> recordIds = new HashSet<>();
+
+      // Map the file window by window. Each window starts at the beginning of a line.
+      long windowStart = 0;
+      while (windowStart < fileSize) {
+        final int windowSize = (int) Math.min(WINDOW_SIZE, fileSize - windowStart);
+        final boolean lastWindow = windowStart + windowSize == fileSize;
+        final MappedByteBuffer window = channel.map(MapMode.READ_ONLY, windowStart, windowSize);
+
+        // Scan all complete lines in this window (the last line of the file may not end in a
+        // line break).
+        int lineStart = 0;
+        while (lineStart < windowSize) {
+          int lineEnd = indexOf(window, (byte) '\n', lineStart, windowSize);
+          if (lineEnd < 0 && !lastWindow) {
+            break;
+          }
+          lineEnd = lineEnd < 0 ? windowSize : lineEnd;
+          if (!scanLine(window, lineStart, lineEnd, recordIds)) {
+            return Optional.empty();
+          }
+          lineStart = lineEnd + 1;
+        }
+
+        // Move to the next window. If not even one line fits in a window, we give up.
+        if (lineStart == 0) {
+          return Optional.empty();
+        }
+        windowStart += Math.min(lineStart, windowSize);
+      }
+      return Optional.of(recordIds);
+    }
+  }
+
+  /**
+   * Scans one line.
+   *
+   * @param buffer    The buffer containing the line.
+   * @param start     The start of the line (inclusive).
+   * @param end       The end of the line (exclusive).
+   * @param recordIds The set to add the record ID to, if the line declares one.
+   * @return Whether the line could be interpreted with certainty.
+   */
+  private static boolean scanLine(MappedByteBuffer buffer, int start, int end,
+      Set<String> recordIds) {
+
+    // Skip empty lines and comments. Statements with blank node subjects can be ignored.
+    final int subjectStart = skipWhitespace(buffer, start, end);
+    if (subjectStart == end || buffer.get(subjectStart) == '#'
+        || buffer.get(subjectStart) == '_') {
+      return true;
+    }
+
+    // Find the subject, predicate and object IRIs. If anything else is found, there is no record
+    // ID declaration on this line.
+    final int subjectEnd = findIriEnd(buffer, subjectStart, end);
+    if (subjectEnd < 0) {
+      return false;
+    }
+    final int predicateStart = skipWhitespace(buffer, subjectEnd, end);
+    final int predicateEnd = findIriEnd(buffer, predicateStart, end);
+    if (predicateEnd < 0 || !matches(buffer, predicateStart, predicateEnd, RDF_TYPE)) {
+      return predicateEnd != -1;
+    }
+    final int objectStart = skipWhitespace(buffer, predicateEnd, end);
+    final int objectEnd = findIriEnd(buffer, objectStart, end);
+    if (objectEnd < 0 || !matches(buffer, objectStart, objectEnd, EDM_PROVIDED_CHO)) {
+      return objectEnd != -1;
+    }
+
+    // We found a record ID. Only absolute IRIs are supported.
+    final byte[] subject = new byte[subjectEnd - subjectStart - 2];
+    buffer.get(subjectStart + 1, subject);
+    final String recordId = new String(subject, StandardCharsets.UTF_8);
+    if (!recordId.contains(":")) {
+      return false;
+    }
+    recordIds.add(RdfBaseUrlUtils.undoResolutionAgainstDefaultBaseUrl(recordId));
+    return true;
+  }
+
+  /**
+   * Finds the end of the IRI starting at the given position.
+   *
+   * @return The position just after the IRI's closing bracket. If there is no IRI at the given
+   * position, -2 is returned. If there is an IRI, but it can not be interpreted with certainty
+   * (because it is not closed or contains escape sequences), -1 is returned.
+   */
+  private static int findIriEnd(MappedByteBuffer buffer, int start, int end) {
+    if (start >= end || buffer.get(start) != '<') {
+      return -2;
+    }
+    for (int position = start + 1; position < end; position++) {
+      final byte current = buffer.get(position);
+      if (current == '>') {
+        return position + 1;
+      }
+      if (current == '\\' || current == ' ' || current == '\t') {
+        return -1;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean matches(MappedByteBuffer buffer, int start, int end, byte[] expected) {
+    if (end - start != expected.length) {
+      return false;
+    }
+    for (int i = 0; i < expected.length; i++) {
+      if (buffer.get(start + i) != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int skipWhitespace(MappedByteBuffer buffer, int start, int end) {
+    int position = start;
+    while (position < end && isWhitespace(buffer.get(position))) {
+      position++;
+    }
+    return position;
+  }
+
+  private static boolean isWhitespace(byte value) {
+    return value == ' ' || value == '\t' || value == '\r';
+  }
+
+  private static int indexOf(MappedByteBuffer buffer, byte value, int start, int end) {
+    for (int position = start; position < end; position++) {
+      if (buffer.get(position) == value) {
+        return position;
+      }
+    }
+    return -1;
+  }
+}
@@ -1,28 +1,18 @@
 package eu.europeana.metis.edm.ext.schema;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.Optional;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
-import java.util.stream.StreamSupport;
-import javax.xml.namespace.QName;
-import javax.xml.stream.XMLEventFactory;
-import javax.xml.stream.XMLEventReader;
-import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.events.Attribute;
-import javax.xml.stream.events.StartElement;
-import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 /**
  * This class contains additional pre-validation for RDF data in XML. This is currently necessary
@@ -53,6 +43,8 @@ import javax.xml.stream.events.XMLEvent;
 public class RdfXmlPreValidationUtils {
 
   private static final String EDM_NAMESPACE = "http://www.europeana.eu/schemas/edm/";
+  private static final String RDF_NAMESPACE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+  private static final String XML_VERSION = "1.0";
 
   private static final Set<String> TOP_LEVEL_ELEMENTS = Set.of(
       EDM_NAMESPACE + "ProvidedCHO",
@@ -65,6 +57,11 @@ public class RdfXmlPreValidationUtils {
       "http://creativecommons.org/ns#License",
       "http://rdfs.org/sioc/services#Service");
 
+  // Creating factories involves service lookups, so we do this only once. Once configured, the
+  // factories can be used concurrently to create readers and writers.
+  private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+  private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
   private RdfXmlPreValidationUtils() {
   }
 
@@ -75,11 +72,10 @@ public class RdfXmlPreValidationUtils {
    * non-RDF-compliant fields.
    * </p>
    * <p>
-   * Note: the reading is executed asynchronously and the method does not block. Any reading errors
-   * will be submitted to the <code>reportItemConsumer</code>, and processing will stop. Similarly,
-   * if the caller wishes to stop reading, they can close the returned <code>InputStream</code>,
-   * this will be noticed by the writing process which will then also stop (and a report item will
-   * be submitted to the <code>reportItemConsumer</code>).
+   * Note: the method does not block. The normalization is performed lazily, in the calling thread,
+   * as the returned <code>InputStream</code> is read. Any reading errors will be submitted to the
+   * <code>reportItemConsumer</code>, and processing will stop (the returned stream ends). If the
+   * caller wishes to stop reading, they can close the returned <code>InputStream</code>.
    * </p>
    *
    * @param xmlData              The XML to validate.
@@ -91,90 +87,250 @@ public class RdfXmlPreValidationUtils {
    */
   protected static InputStream normalizeAndPreValidateXmlData(InputStream xmlData,
       Consumer<ValidationReportItem> reportItemConsumer, boolean reportNestedElements) {
-    final PipedInputStream result = new PipedInputStream();
-    CompletableFuture.supplyAsync(() -> {
-      try (final PipedOutputStream normalizedRecord = new PipedOutputStream(result)) {
-        normalizeAndPreValidateXmlDataPrivate(xmlData, reportItemConsumer, normalizedRecord,
-            reportNestedElements);
-      } catch (IOException | XMLStreamException | RuntimeException e) {
-        reportItemConsumer.accept(new ValidationReportItem(null, null, null,
-            "Could not read the XML content: " + e.getMessage(), ValidationIssueSeverity.ERROR));
-      }
-      return null;
-    });
-    return result;
+    return normalizeAndPreValidateXmlData(xmlData, reportItemConsumer, reportNestedElements,
+        ValidationListener.NO_OP);
+  }
+
+  /**
+   * Analyzes an XML file ahead of RDF validation, reporting the progress to a listener. See
+   * {@link #normalizeAndPreValidateXmlData(InputStream, Consumer, boolean)}. The listener is
+   * notified of the completion of the {@link ValidationPhase#PRE_VALIDATION} phase when the end of
+   * the input is reached or the returned stream is closed, whichever comes first.
+   *
+   * @param xmlData              The XML to validate.
+   * @param reportItemConsumer   A consumer for validation report items in case issues were found.
+   * @param reportNestedElements Whether nested elements should be reported.
+   * @param listener             The listener to notify.
+   * @return An input stream containing the normalized version of the XML file.
+   */
+  static InputStream normalizeAndPreValidateXmlData(InputStream xmlData,
+      Consumer<ValidationReportItem> reportItemConsumer, boolean reportNestedElements,
+      ValidationListener listener) {
+    return new NormalizedXmlInputStream(xmlData, reportItemConsumer, reportNestedElements,
+        listener);
+  }
+
+  private static boolean isProvenanceAttribute(String namespaceUri, String localName) {
+    return EDM_NAMESPACE.equals(namespaceUri)
+        && ("wasGeneratedBy".equals(localName) || "confidenceLevel".equals(localName));
+  }
+
+  private static void verifyNestedElement(String namespaceUri, String localName, String elementId,
+      Consumer<ValidationReportItem> reportItemConsumer) {
+    final String fullElementName = namespaceUri + localName;
+    if (TOP_LEVEL_ELEMENTS.contains(fullElementName)) {
+      reportItemConsumer.accept(new ValidationReportItem(elementId, null, null,
+          "XML Elements of type " + fullElementName
+              + " must be top-level elements and may not be nested inside other elements.",
+          ValidationIssueSeverity.ERROR));
+    }
+  }
+
+  private static String nullToEmpty(String value) {
+    return value == null ? "" : value;
   }
 
-  private static void normalizeAndPreValidateXmlDataPrivate(InputStream xmlData,
-      Consumer<ValidationReportItem> reportItemConsumer, OutputStream output,
-      boolean reportNestedElements) throws XMLStreamException {
+  /**
+   * An input stream that contains the normalized version of XML data. The normalization is
+   * performed on demand: whenever the stream's buffer is exhausted, the next batch of XML events is
+   * read from the input, normalized and written to the buffer. This uses the StAX cursor API, so
+   * that no objects need to be created for the individual events.
+   */
+  private static final class NormalizedXmlInputStream extends InputStream {
+
+    private static final int EVENTS_PER_BATCH = 256;
+
+    private final Consumer<ValidationReportItem> reportItemConsumer;
+    private final boolean reportNestedElements;
+    private final ValidationListener listener;
+    private final ExposedByteArrayOutputStream buffer = new ExposedByteArrayOutputStream();
+    private XMLStreamReader reader;
+    private XMLStreamWriter writer;
+    private int position = 0;
+    private int currentDepth = 0;
+    private boolean finished = false;
+    private long processingNanos = 0;
+    private int reportItemCount = 0;
+    private boolean phaseReported = false;
+
+    NormalizedXmlInputStream(InputStream xmlData,
+        Consumer<ValidationReportItem> reportItemConsumer, boolean reportNestedElements,
+        ValidationListener listener) {
+      this.reportItemConsumer = item -> {
+        reportItemCount++;
+        reportItemConsumer.accept(item);
+      };
+      this.reportNestedElements = reportNestedElements;
+      this.listener = listener;
+      final long start = System.nanoTime();
+      try {
+
+        // Set up the input with the XML data as provided, and the output for the normalized data.
+        // The reader is positioned at the start of the document: we write the declaration.
+        this.reader = XML_INPUT_FACTORY.createXMLStreamReader(xmlData);
+        this.writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(buffer,
+            StandardCharsets.UTF_8.name());
+        this.writer.writeStartDocument(StandardCharsets.UTF_8.name(),
+            reader.getVersion() == null ? XML_VERSION : reader.getVersion());
+      } catch (XMLStreamException | RuntimeException e) {
+        handleReadError(e);
+      }
+      processingNanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (position >= buffer.size()) {
+        fillBuffer();
+        if (position >= buffer.size()) {
+          return -1;
+        }
+      }
+      return buffer.getBytes()[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      Objects.checkFromIndexSize(offset, length, bytes.length);
+      if (length == 0) {
+        return 0;
+      }
+      if (position >= buffer.size()) {
+        fillBuffer();
+        if (position >= buffer.size()) {
+          return -1;
+        }
+      }
+      final int bytesToCopy = Math.min(length, buffer.size() - position);
+      System.arraycopy(buffer.getBytes(), position, bytes, offset, bytesToCopy);
+      position += bytesToCopy;
+      return bytesToCopy;
+    }
 
-    // Set up the input with the XML data as provided.
-    final XMLEventFactory eventFactory = XMLEventFactory.newInstance();
-    final XMLEventReader reader = XMLInputFactory.newInstance().createXMLEventReader(xmlData);
+    @Override
+    public void close() throws IOException {
+      finished = true;
+      reportPhaseCompleted();
+      try {
+        if (reader != null) {
+          reader.close();
+        }
+        if (writer != null) {
+          writer.close();
+        }
+      } catch (XMLStreamException e) {
+        throw new IOException("Could not close the XML stream.", e);
+      }
+    }
 
-    // Set up the output for the normalized XML data.
-    final XMLEventWriter writer = XMLOutputFactory.newInstance().createXMLEventWriter(output);
+    private void fillBuffer() {
+      buffer.reset();
+      position = 0;
+      final long start = System.nanoTime();
+      try {
 
-    // Go by the events. Keep track of the element's level (depth). Note: if writing to the output
-    // fails, the loop is interrupted and an exception is returned.
-    final AtomicInteger currentDepth = new AtomicInteger(0);
-    while (reader.hasNext()) {
+        // Process events until the writer has produced output, or the input is exhausted.
+        while (buffer.size() == 0 && !finished) {
+          for (int i = 0; i < EVENTS_PER_BATCH && reader.hasNext(); i++) {
+            processEvent(reader.next());
+          }
+          writer.flush();
+          finished = !reader.hasNext();
+        }
+      } catch (XMLStreamException | RuntimeException e) {
+        handleReadError(e);
+      }
+      processingNanos += System.nanoTime() - start;
+      if (finished) {
+        reportPhaseCompleted();
+      }
+    }
 
-      // Get the next event.
-      final XMLEvent nextEvent = reader.nextEvent();
-      if (nextEvent.isStartElement()) {
+    private void reportPhaseCompleted() {
+      if (!phaseReported) {
+        phaseReported = true;
+        listener.phaseCompleted(ValidationPhase.PRE_VALIDATION, processingNanos, -1,
+            reportItemCount);
+      }
+    }
+
+    private void handleReadError(Exception exception) {
+      finished = true;
+      reportItemConsumer.accept(new ValidationReportItem(null, null, null,
+          "Could not read the XML content: " + exception.getMessage(),
+          ValidationIssueSeverity.ERROR));
+    }
 
-        // Check whether we support this element at this depth.
-        final StartElement element = nextEvent.asStartElement();
-        if (currentDepth.get() > 1 && reportNestedElements) {
-          verifyNestedElement(element, reportItemConsumer);
+    private void processEvent(int eventType) throws XMLStreamException {
+      switch (eventType) {
+        case XMLStreamConstants.START_ELEMENT -> processStartElement();
+        case XMLStreamConstants.END_ELEMENT -> {
+          currentDepth--;
+          writer.writeEndElement();
+        }
+        case XMLStreamConstants.CHARACTERS, XMLStreamConstants.SPACE -> writer.writeCharacters(
+            reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+        case XMLStreamConstants.CDATA -> writer.writeCData(reader.getText());
+        case XMLStreamConstants.COMMENT -> writer.writeComment(reader.getText());
+        case XMLStreamConstants.PROCESSING_INSTRUCTION ->
+            writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+        case XMLStreamConstants.ENTITY_REFERENCE -> writer.writeEntityRef(reader.getLocalName());
+        case XMLStreamConstants.DTD -> writer.writeDTD(reader.getText());
+        case XMLStreamConstants.END_DOCUMENT -> writer.writeEndDocument();
+        default -> {
+          // Other events don't need to be passed on.
         }
+      }
+    }
 
-        // Increment the depth counter.
-        currentDepth.getAndIncrement();
+    private void processStartElement() throws XMLStreamException {
 
-        // Pass an adjusted start element, without the provenance attributes.
-        writer.add(eventFactory.createStartElement(
-            element.getName().getPrefix(), element.getName().getNamespaceURI(),
-            element.getName().getLocalPart(), stripProvenanceAttributes(element.getAttributes()),
-            element.getNamespaces(), element.getNamespaceContext()));
+      // Check whether we support this element at this depth.
+      final String namespaceUri = nullToEmpty(reader.getNamespaceURI());
+      final String localName = reader.getLocalName();
+      if (currentDepth > 1 && reportNestedElements) {
+        verifyNestedElement(namespaceUri, localName,
+            reader.getAttributeValue(RDF_NAMESPACE, "about"), reportItemConsumer);
+      }
 
-      } else {
+      // Increment the depth counter.
+      currentDepth++;
 
-        // Reduce the depth counter if needed.
-        if (nextEvent.isEndElement()) {
-          currentDepth.decrementAndGet();
+      // Pass the start element with its namespace declarations.
+      writer.writeStartElement(nullToEmpty(reader.getPrefix()), localName, namespaceUri);
+      for (int i = 0; i < reader.getNamespaceCount(); i++) {
+        final String prefix = reader.getNamespacePrefix(i);
+        if (prefix == null || prefix.isEmpty()) {
+          writer.writeDefaultNamespace(reader.getNamespaceURI(i));
+        } else {
+          writer.writeNamespace(prefix, reader.getNamespaceURI(i));
         }
+      }
 
-        // Pass on the event unchanged.
-        writer.add(nextEvent);
+      // Pass the attributes, except for the provenance attributes.
+      for (int i = 0; i < reader.getAttributeCount(); i++) {
+        final String attributeNamespace = reader.getAttributeNamespace(i);
+        final String attributeName = reader.getAttributeLocalName(i);
+        if (isProvenanceAttribute(attributeNamespace, attributeName)) {
+          continue;
+        }
+        if (attributeNamespace == null || attributeNamespace.isEmpty()) {
+          writer.writeAttribute(attributeName, reader.getAttributeValue(i));
+        } else {
+          writer.writeAttribute(nullToEmpty(reader.getAttributePrefix(i)), attributeNamespace,
+              attributeName, reader.getAttributeValue(i));
+        }
       }
     }
   }
 
-  private static Iterator<Attribute> stripProvenanceAttributes(Iterator<Attribute> attributes) {
-    final Iterable<Attribute> attributesIterable = () -> Optional.ofNullable(attributes)
-        .orElse(Collections.emptyIterator());
-    return StreamSupport.stream(attributesIterable.spliterator(), false).filter(attribute -> {
-      final QName name = attribute.getName();
-      return !name.getNamespaceURI().equals(EDM_NAMESPACE) ||
-          !Set.of("wasGeneratedBy", "confidenceLevel").contains(name.getLocalPart());
-    }).iterator();
-  }
+  /**
+   * A byte array output stream that gives access to its internal buffer (without copying).
+   */
+  private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
 
-  private static void verifyNestedElement(StartElement element,
-      Consumer<ValidationReportItem> reportItemConsumer) {
-    final String fullElementName =
-        element.getName().getNamespaceURI() + element.getName().getLocalPart();
-    final String elementId = Optional.ofNullable(element.getAttributeByName(
-            new QName("http://www.w3.org/1999/02/22-rdf-syntax-ns#", "about")))
-        .map(Attribute::getValue).orElse(null);
-    if (TOP_LEVEL_ELEMENTS.contains(fullElementName)) {
-      reportItemConsumer.accept(new ValidationReportItem(elementId, null, null,
-          "XML Elements of type " + fullElementName
-              + " must be top-level elements and may not be nested inside other elements.",
-          ValidationIssueSeverity.ERROR));
+    byte[] getBytes() {
+      return buf;
     }
   }
 }
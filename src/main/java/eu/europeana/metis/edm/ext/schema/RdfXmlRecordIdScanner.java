@@ -0,0 +1,190 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import eu.europeana.metis.common.rdf.RdfBaseUrlUtils;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * <p>This class extracts record IDs from RDF/XML data without building RDF triples. It reads the
+ * XML with the StAX cursor API and follows the RDF/XML striping (alternating node and property
+ * elements) to find node elements that are typed <code>edm:ProvidedCHO</code>, either through the
+ * element name, through an <code>rdf:type</code> attribute or through an <code>rdf:type</code>
+ * property element. It also finds the resources that are typed <code>edm:ProvidedCHO</code>
+ * through an <code>rdf:type</code> property attribute on a property element (i.e. the object of
+ * the property, given by <code>rdf:resource</code>).
+ * </p>
+ * <p>The scanner does not validate the data beyond what it needs. If it encounters a construct
+ * that it does not interpret (e.g. <code>xml:base</code>, <code>rdf:ID</code>,
+ * <code>rdf:parseType</code>, relative IRIs or IRIs with dot segments (which the parser would
+ * resolve), an <code>rdf:type</code> property element with element content, or an
+ * <code>edm:ProvidedCHO</code> without <code>rdf:about</code> or <code>rdf:resource</code>, such
+ * as one identified by <code>rdf:nodeID</code>), or if the XML can not be read, it gives up, so
+ * that the caller can fall back to full parsing.
+ * </p>
+ */
+final class RdfXmlRecordIdScanner {
+
+  private static final String RDF_NAMESPACE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+  private static final String EDM_NAMESPACE = "http://www.europeana.eu/schemas/edm/";
+  private static final String PROVIDED_CHO = "ProvidedCHO";
+  private static final String EDM_PROVIDED_CHO = EDM_NAMESPACE + PROVIDED_CHO;
+
+  private static final Pattern ABSOLUTE_IRI = Pattern.compile("^[A-Za-z][A-Za-z0-9+.\\-]*:.*");
+  private static final Pattern DOT_SEGMENT = Pattern.compile("(^|/)\\.\\.?([/?#]|$)");
+
+  private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+  private RdfXmlRecordIdScanner() {
+  }
+
+  /**
+   * The role of an element in the RDF/XML striping.
+   */
+  private enum ElementRole {ROOT, NODE, PROPERTY}
+
+  /**
+   * An element that is currently open.
+   *
+   * @param role         The role of the element.
+   * @param subject      The IRI of the resource described by this element, if it is a node
+   *                     element with an <code>rdf:about</code> attribute. Null otherwise.
+   * @param typeProperty Whether this element is an <code>rdf:type</code> property element.
+   */
+  private record OpenElement(ElementRole role, String subject, boolean typeProperty) {
+
+  }
+
+  /**
+   * Scans the data for record IDs.
+   *
+   * @param data The data to scan. The caller is responsible for closing it.
+   * @return The set of record IDs found, or an empty optional if the data could not be scanned
+   * with certainty.
+   */
+  static Optional<Set<String>> scan(InputStream data) {
+    final Set<String> recordIds = new HashSet<>();
+    final Deque<OpenElement> openElements = new ArrayDeque<>();
+    XMLStreamReader reader = null;
+    try {
+      reader = XML_INPUT_FACTORY.createXMLStreamReader(data);
+      while (reader.hasNext()) {
+        final int eventType = reader.next();
+        if (eventType == XMLStreamConstants.START_ELEMENT) {
+          final OpenElement element = processStartElement(reader, openElements.peek(), recordIds);
+          if (element == null) {
+            return Optional.empty();
+          }
+          openElements.push(element);
+        } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+          openElements.pop();
+        }
+      }
+      return Optional.of(recordIds);
+    } catch (XMLStreamException | RuntimeException e) {
+      return Optional.empty();
+    } finally {
+      closeQuietly(reader);
+    }
+  }
+
+  /**
+   * Processes a start element.
+   *
+   * @return The element that was opened, or null if the element could not be interpreted with
+   * certainty.
+   */
+  private static OpenElement processStartElement(XMLStreamReader reader, OpenElement parent,
+      Set<String> recordIds) {
+
+    // Refuse constructs that influence the interpretation in ways that we don't support.
+    if (reader.getAttributeValue(XMLConstants.XML_NS_URI, "base") != null
+        || reader.getAttributeValue(RDF_NAMESPACE, "ID") != null
+        || reader.getAttributeValue(RDF_NAMESPACE, "parseType") != null) {
+      return null;
+    }
+
+    // Determine the role of the element: the children of node elements are property elements and
+    // vice versa. The (optional) rdf:RDF element contains node elements.
+    final String namespaceUri = reader.getNamespaceURI();
+    final String localName = reader.getLocalName();
+    final ElementRole role;
+    if (parent == null) {
+      role = RDF_NAMESPACE.equals(namespaceUri) && "RDF".equals(localName) ? ElementRole.ROOT
+          : ElementRole.NODE;
+    } else {
+      role = parent.role() == ElementRole.NODE ? ElementRole.PROPERTY : ElementRole.NODE;
+    }
+
+    // Node elements: check whether they declare a record. We can't interpret a node element
+    // inside an rdf:type property element (the type would be that node), nor a record without an
+    // IRI (e.g. a node element with rdf:nodeID).
+    if (role == ElementRole.NODE) {
+      if (parent != null && parent.typeProperty()) {
+        return null;
+      }
+      final String about = reader.getAttributeValue(RDF_NAMESPACE, "about");
+      if (about != null && !isSupportedIri(about)) {
+        return null;
+      }
+      final boolean isProvidedCho =
+          (EDM_NAMESPACE.equals(namespaceUri) && PROVIDED_CHO.equals(localName))
+              || EDM_PROVIDED_CHO.equals(reader.getAttributeValue(RDF_NAMESPACE, "type"));
+      if (isProvidedCho) {
+        if (about == null) {
+          return null;
+        }
+        recordIds.add(RdfBaseUrlUtils.undoResolutionAgainstDefaultBaseUrl(about));
+      }
+      return new OpenElement(role, about, false);
+    }
+
+    // Property elements: check whether they declare the parent to be a record.
+    final String resource = reader.getAttributeValue(RDF_NAMESPACE, "resource");
+    final boolean typeProperty = role == ElementRole.PROPERTY
+        && RDF_NAMESPACE.equals(namespaceUri) && "type".equals(localName);
+    if (typeProperty && EDM_PROVIDED_CHO.equals(resource)) {
+      if (parent.subject() == null) {
+        return null;
+      }
+      recordIds.add(RdfBaseUrlUtils.undoResolutionAgainstDefaultBaseUrl(parent.subject()));
+    }
+
+    // Property elements with property attributes describe the object: check whether they declare
+    // the object to be a record. We can't interpret a record without an IRI.
+    if (EDM_PROVIDED_CHO.equals(reader.getAttributeValue(RDF_NAMESPACE, "type"))) {
+      if (resource == null || !isSupportedIri(resource)) {
+        return null;
+      }
+      recordIds.add(RdfBaseUrlUtils.undoResolutionAgainstDefaultBaseUrl(resource));
+    }
+    return new OpenElement(role, null, typeProperty);
+  }
+
+  /**
+   * @return Whether the IRI is absolute and has no dot segments (i.e. whether the parser would
+   * take it as it is).
+   */
+  private static boolean isSupportedIri(String iri) {
+    return ABSOLUTE_IRI.matcher(iri).matches() && !DOT_SEGMENT.matcher(iri).find();
+  }
+
+  private static void closeQuietly(XMLStreamReader reader) {
+    if (reader != null) {
+      try {
+        reader.close();
+      } catch (XMLStreamException e) {
+        // Nothing to do: we are done with the reader.
+      }
+    }
+  }
+}
@@ -0,0 +1,327 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.shacl.Shapes;
+import org.apache.jena.shacl.parser.Shape;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+
+/**
+ * <p>This class analyzes the changes between two versions of a record, to determine which
+ * resources need to be validated again against the SHACL shapes. These are the subjects of the
+ * added and removed triples, and all resources that (directly or indirectly) link to them: the
+ * shapes may look at the properties of linked resources (e.g. their type for
+ * <code>sh:class</code>, or through a sequence path).
+ * </p>
+ * <p>The number of links that are followed back (the dependency depth) is derived from the shapes
+ * when this class is loaded: it is the largest distance, counted in links from the focus node,
+ * from which any shape reads triples (following paths, <code>sh:class</code>,
+ * <code>sh:closed</code> and nested shapes). If a shape can read triples of resources that are not
+ * reached in this way, or at an unbounded distance (e.g. through an inverse path, an
+ * arbitrary-length path, recursive shapes, <code>sh:targetObjectsOf</code> or SPARQL-based
+ * constraints), the changes are not analyzed at all, and a full validation is required.
+ * </p>
+ */
+final class RecordChanges {
+
+  /**
+   * The value for a depth that has no bound (or that can not be determined).
+   */
+  static final int UNBOUNDED_DEPTH = Integer.MAX_VALUE;
+
+  private final Set<Node> affectedNodes;
+
+  private RecordChanges(Set<Node> affectedNodes) {
+    this.affectedNodes = affectedNodes;
+  }
+
+  /**
+   * Analyzes the changes between two versions of a record.
+   *
+   * @param previousRecord The previous version of the record.
+   * @param currentRecord  The current version of the record.
+   * @return The changes, or null if the changes can not be analyzed reliably. This is the case if
+   * blank nodes are involved (as they can not be matched between versions), if the changes affect
+   * the class hierarchy, or if the dependency depth of the shapes is unbounded.
+   */
+  static RecordChanges compute(Graph previousRecord, Graph currentRecord) {
+    final int dependencyDepth = getDependencyDepth();
+    if (dependencyDepth == UNBOUNDED_DEPTH) {
+      return null;
+    }
+
+    // Find the subjects of the changed triples.
+    final Set<Node> changedSubjects = new HashSet<>();
+    if (!collectChangedSubjects(previousRecord, currentRecord, changedSubjects)
+        || !collectChangedSubjects(currentRecord, previousRecord, changedSubjects)) {
+      return null;
+    }
+
+    // Find the resources linking to them, in either version.
+    final Set<Node> affectedNodes = new HashSet<>(changedSubjects);
+    Set<Node> frontier = changedSubjects;
+    for (int depth = 0; depth < dependencyDepth && !frontier.isEmpty(); depth++) {
+      final Set<Node> nextFrontier = new HashSet<>();
+      for (Node node : frontier) {
+        for (Graph graph : List.of(previousRecord, currentRecord)) {
+          graph.find(Node.ANY, Node.ANY, node).forEachRemaining(triple -> {
+            if (affectedNodes.add(triple.getSubject())) {
+              nextFrontier.add(triple.getSubject());
+            }
+          });
+        }
+      }
+      frontier = nextFrontier;
+    }
+    if (affectedNodes.stream().anyMatch(Node::isBlank)) {
+      return null;
+    }
+    return new RecordChanges(affectedNodes);
+  }
+
+  private static boolean collectChangedSubjects(Graph graph, Graph otherGraph,
+      Set<Node> changedSubjects) {
+    final var iterator = graph.find();
+    try {
+      while (iterator.hasNext()) {
+        final Triple triple = iterator.next();
+        if (otherGraph.contains(triple)) {
+          continue;
+        }
+        if (triple.getSubject().isBlank() || triple.getObject().isBlank()
+            || RDFS.subClassOf.asNode().equals(triple.getPredicate())) {
+          return false;
+        }
+        changedSubjects.add(triple.getSubject());
+      }
+      return true;
+    } finally {
+      iterator.close();
+    }
+  }
+
+  /**
+   * @return The resources that need to be validated again. None of them are blank nodes.
+   */
+  Set<Node> getAffectedNodes() {
+    return affectedNodes;
+  }
+
+  /**
+   * @return The dependency depth derived from the validation shapes, or {@link #UNBOUNDED_DEPTH}
+   * if the changes are never analyzed.
+   */
+  static int getDependencyDepth() {
+    return Holder.DEPENDENCY_DEPTH.get("the dependency depth of the validation shapes");
+  }
+
+  /**
+   * Computes the dependency depth for the given shapes: the largest distance (in links from the
+   * focus node) of the resources of which the target shapes read triples.
+   *
+   * @param shapes The shapes.
+   * @return The dependency depth, or {@link #UNBOUNDED_DEPTH}.
+   */
+  static int computeDependencyDepth(Shapes shapes) {
+    final ShapeDepthAnalysis analysis = new ShapeDepthAnalysis(shapes.getGraph());
+    int result = 0;
+    for (Shape shape : shapes.getTargetShapes()) {
+      result = Math.max(result, analysis.getShapeDepth(shape.getShapeNode()));
+    }
+    return result;
+  }
+
+  /**
+   * Determines, for shapes in the shapes graph, the largest distance (in links from the focus
+   * node) of the resources of which the shape reads triples. A shape that reads no triples at all
+   * (e.g. one that only checks the datatype of the focus node) has depth -1.
+   */
+  private static final class ShapeDepthAnalysis {
+
+    private static final Node SH_PATH = CompiledShapes.shaclNode("path");
+    private static final Node SH_CLASS = CompiledShapes.shaclNode("class");
+    private static final Node SH_CLOSED = CompiledShapes.shaclNode("closed");
+    private static final Node SH_ALTERNATIVE_PATH = CompiledShapes.shaclNode("alternativePath");
+    private static final Node SH_ZERO_OR_ONE_PATH = CompiledShapes.shaclNode("zeroOrOnePath");
+
+    // The parameters with a shape that is evaluated on the value nodes.
+    private static final Set<Node> NESTED_SHAPE_PARAMETERS = Set.of(
+        CompiledShapes.shaclNode("node"), CompiledShapes.shaclNode("not"),
+        CompiledShapes.shaclNode("property"), CompiledShapes.shaclNode("qualifiedValueShape"));
+
+    // The parameters with a list of shapes that are evaluated on the value nodes.
+    private static final Set<Node> NESTED_SHAPE_LIST_PARAMETERS = Set.of(
+        CompiledShapes.shaclNode("or"), CompiledShapes.shaclNode("and"),
+        CompiledShapes.shaclNode("xone"));
+
+    // The parameters that only look at the value nodes themselves, or at the values of the focus
+    // node, and those that do not affect conformance. Targets are included: the focus nodes that
+    // they select depend only on the triples of the focus node, except for sh:targetObjectsOf.
+    private static final Set<Node> LOCAL_PARAMETERS = Set.of(SH_PATH,
+        CompiledShapes.shaclNode("datatype"), CompiledShapes.shaclNode("nodeKind"),
+        CompiledShapes.shaclNode("minCount"), CompiledShapes.shaclNode("maxCount"),
+        CompiledShapes.shaclNode("minLength"), CompiledShapes.shaclNode("maxLength"),
+        CompiledShapes.shaclNode("minInclusive"), CompiledShapes.shaclNode("maxInclusive"),
+        CompiledShapes.shaclNode("minExclusive"), CompiledShapes.shaclNode("maxExclusive"),
+        CompiledShapes.shaclNode("pattern"), CompiledShapes.shaclNode("flags"),
+        CompiledShapes.shaclNode("languageIn"), CompiledShapes.shaclNode("uniqueLang"),
+        CompiledShapes.shaclNode("in"), CompiledShapes.shaclNode("hasValue"),
+        CompiledShapes.shaclNode("equals"), CompiledShapes.shaclNode("disjoint"),
+        CompiledShapes.shaclNode("lessThan"), CompiledShapes.shaclNode("lessThanOrEquals"),
+        CompiledShapes.shaclNode("qualifiedMinCount"),
+        CompiledShapes.shaclNode("qualifiedMaxCount"),
+        CompiledShapes.shaclNode("ignoredProperties"), CompiledShapes.shaclNode("deactivated"),
+        CompiledShapes.shaclNode("message"), CompiledShapes.shaclNode("severity"),
+        CompiledShapes.shaclNode("name"), CompiledShapes.shaclNode("description"),
+        CompiledShapes.shaclNode("order"), CompiledShapes.shaclNode("group"),
+        CompiledShapes.shaclNode("defaultValue"), CompiledShapes.shaclNode("targetClass"),
+        CompiledShapes.shaclNode("targetNode"), CompiledShapes.shaclNode("targetSubjectsOf"));
+
+    private final Graph shapesGraph;
+    private final Map<Node, Integer> depthsByShapeNode = new HashMap<>();
+    private final Set<Node> shapesInProgress = new HashSet<>();
+
+    ShapeDepthAnalysis(Graph shapesGraph) {
+      this.shapesGraph = shapesGraph;
+    }
+
+    int getShapeDepth(Node shapeNode) {
+      final Integer knownDepth = depthsByShapeNode.get(shapeNode);
+      if (knownDepth != null) {
+        return knownDepth;
+      }
+
+      // Recursive shapes can follow links indefinitely.
+      if (!shapesInProgress.add(shapeNode)) {
+        return UNBOUNDED_DEPTH;
+      }
+      final int result = computeShapeDepth(shapeNode);
+      shapesInProgress.remove(shapeNode);
+      depthsByShapeNode.put(shapeNode, result);
+      return result;
+    }
+
+    private int computeShapeDepth(Node shapeNode) {
+      final List<Triple> parameters = shapesGraph.find(shapeNode, Node.ANY, Node.ANY).toList();
+
+      // The value nodes are the focus node (for node shapes) or reached through the path. To
+      // follow the path, the triples of the resources before the value nodes are read.
+      int valueNodeDistance = 0;
+      for (Triple parameter : parameters) {
+        if (SH_PATH.equals(parameter.getPredicate())) {
+          valueNodeDistance = Math.max(valueNodeDistance,
+              getPathLength(parameter.getObject(), new HashSet<>()));
+        }
+      }
+      if (valueNodeDistance == UNBOUNDED_DEPTH) {
+        return UNBOUNDED_DEPTH;
+      }
+      int result = valueNodeDistance - 1;
+
+      // Check the other parameters. Unknown ones may read anything.
+      for (Triple parameter : parameters) {
+        final Node predicate = parameter.getPredicate();
+        final int depth;
+        if (!predicate.getURI().startsWith(CompiledShapes.SHACL_NAMESPACE)
+            || LOCAL_PARAMETERS.contains(predicate)) {
+          continue;
+        } else if (SH_CLASS.equals(predicate) || SH_CLOSED.equals(predicate)) {
+          depth = valueNodeDistance;
+        } else if (NESTED_SHAPE_PARAMETERS.contains(predicate)) {
+          depth = add(valueNodeDistance, getShapeDepth(parameter.getObject()));
+        } else if (NESTED_SHAPE_LIST_PARAMETERS.contains(predicate)) {
+          depth = add(valueNodeDistance, getShapeListDepth(parameter.getObject()));
+        } else {
+          depth = UNBOUNDED_DEPTH;
+        }
+        result = Math.max(result, depth);
+      }
+      return result;
+    }
+
+    private int getShapeListDepth(Node list) {
+      final List<Node> members = CompiledShapes.getListMembers(shapesGraph, list);
+      if (members == null) {
+        return UNBOUNDED_DEPTH;
+      }
+      int result = -1;
+      for (Node member : members) {
+        result = Math.max(result, getShapeDepth(member));
+      }
+      return result;
+    }
+
+    /**
+     * @return The (largest) number of links from the focus node to the value nodes of the path.
+     */
+    private int getPathLength(Node path, Set<Node> pathsInProgress) {
+      if (path.isURI()) {
+        return 1;
+      }
+      if (!pathsInProgress.add(path)) {
+        return UNBOUNDED_DEPTH;
+      }
+      final int result;
+      if (shapesGraph.contains(path, RDF.first.asNode(), Node.ANY)) {
+        result = getPathListLength(path, pathsInProgress, true);
+      } else {
+        final List<Triple> definition = shapesGraph.find(path, Node.ANY, Node.ANY).toList()
+            .stream().filter(triple -> triple.getPredicate().getURI()
+                .startsWith(CompiledShapes.SHACL_NAMESPACE)).toList();
+        final Node predicate = definition.size() == 1 ? definition.get(0).getPredicate() : null;
+        if (SH_ALTERNATIVE_PATH.equals(predicate)) {
+          result = getPathListLength(definition.get(0).getObject(), pathsInProgress, false);
+        } else if (SH_ZERO_OR_ONE_PATH.equals(predicate)) {
+          result = getPathLength(definition.get(0).getObject(), pathsInProgress);
+        } else {
+
+          // Inverse paths lead to resources that link to the focus node, which are not found by
+          // following the links back, and arbitrary-length paths have no bound.
+          result = UNBOUNDED_DEPTH;
+        }
+      }
+      pathsInProgress.remove(path);
+      return result;
+    }
+
+    /**
+     * @return The length of a sequence path (if the lengths are to be added), or of an alternative
+     * path (otherwise).
+     */
+    private int getPathListLength(Node list, Set<Node> pathsInProgress, boolean sequence) {
+      final List<Node> members = CompiledShapes.getListMembers(shapesGraph, list);
+      if (members == null || members.isEmpty()) {
+        return UNBOUNDED_DEPTH;
+      }
+      int result = 0;
+      for (Node member : members) {
+        final int length = getPathLength(member, pathsInProgress);
+        result = sequence ? add(result, length) : Math.max(result, length);
+      }
+      return result;
+    }
+
+    private static int add(int distance, int depth) {
+      return distance == UNBOUNDED_DEPTH || depth == UNBOUNDED_DEPTH ? UNBOUNDED_DEPTH
+          : distance + depth;
+    }
+  }
+
+  /**
+   * Lazy initialization holder: the dependency depth is computed when this class is first
+   * accessed, after which it is read without synchronization. A failure is kept and reported on
+   * every access (see {@link LoadResult}).
+   */
+  private static final class Holder {
+
+    private static final LoadResult<Integer> DEPENDENCY_DEPTH =
+        LoadResult.load(() -> computeDependencyDepth(ValidationShapes.get()));
+  }
+}
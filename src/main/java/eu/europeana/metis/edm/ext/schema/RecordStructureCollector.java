@@ -0,0 +1,83 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * This class collects structural information about a record while it is being parsed, so that the
+ * global checks (on the record ID and on the resource types) can be performed without querying
+ * the model afterwards. It is a tap on the parser output: all data is passed on to the wrapped
+ * destination unchanged.
+ */
+final class RecordStructureCollector extends StreamRDFWrapper {
+
+  private static final Node EDM_PROVIDED_CHO =
+      NodeFactory.createURI("http://www.europeana.eu/schemas/edm/ProvidedCHO");
+
+  private final Set<String> recordIds = new HashSet<>();
+  private final Map<Node, Set<Node>> typesBySubject = new LinkedHashMap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param destination The destination to which to pass on the data.
+   */
+  RecordStructureCollector(StreamRDF destination) {
+    super(destination);
+  }
+
+  @Override
+  public void triple(Triple triple) {
+    collect(triple);
+    super.triple(triple);
+  }
+
+  @Override
+  public void quad(Quad quad) {
+
+    // Only quads in the default graph end up in the model.
+    if (quad.isTriple() || quad.isDefaultGraph()) {
+      collect(quad.asTriple());
+    }
+    super.quad(quad);
+  }
+
+  private void collect(Triple triple) {
+    final Node subject = triple.getSubject();
+    final Set<Node> types = typesBySubject.computeIfAbsent(subject, key -> new HashSet<>(2));
+    if (RDF.type.asNode().equals(triple.getPredicate())) {
+      types.add(triple.getObject());
+
+      // Check which resources are of type edm:ProvidedCHO. Note: subtypes are not supported.
+      if (EDM_PROVIDED_CHO.equals(triple.getObject()) && subject.isURI()) {
+        recordIds.add(subject.getURI());
+      }
+    }
+  }
+
+  /**
+   * @return The IRIs of all resources of type <code>edm:ProvidedCHO</code>. Is not null, but
+   * could be empty.
+   */
+  Set<String> getRecordIds() {
+    return Collections.unmodifiableSet(recordIds);
+  }
+
+  /**
+   * @return All resources that the data makes any statements about (i.e. that occur as subject),
+   * mapped to the (possibly empty) set of their declared types, in order of first occurrence.
+   */
+  Map<Node, Set<Node>> getTypesBySubject() {
+    return Collections.unmodifiableMap(typesBySubject);
+  }
+}
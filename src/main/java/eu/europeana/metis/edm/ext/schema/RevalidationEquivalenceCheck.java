@@ -0,0 +1,223 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParserBuilder;
+
+/**
+ * <p>Build-time check that the incremental revalidation (see
+ * {@link EdmExternalValidator#revalidateSingleRecord(Model, ValidationReport, Model)}) gives the
+ * same reports as a full validation. It applies a number of edits to a record (changed, added and
+ * removed literals, types, links and resources, at various distances from the resources that
+ * link to them), and compares, for each edit and for its reversal, the report of the revalidation
+ * with that of the full validation of the edited record. The order of the report items is not
+ * compared.
+ * </p>
+ * <p>The check runs as part of the build, after the shapes are precompiled (see
+ * {@link ShapesPrecompiler}). It fails with an exception if any difference is found.
+ * </p>
+ */
+public final class RevalidationEquivalenceCheck {
+
+  // The prefixes and the base IRI of the record and of the edits.
+  private static final String PREFIXES = """
+      @base              <http://data.example.org/record/0/> .
+      @prefix cc:        <http://creativecommons.org/ns#> .
+      @prefix dc:        <http://purl.org/dc/elements/1.1/> .
+      @prefix dcterms:   <http://purl.org/dc/terms/> .
+      @prefix edm:       <http://www.europeana.eu/schemas/edm/> .
+      @prefix ef_usage:  <http://data.europeana.eu/vocabulary/usageArea/> .
+      @prefix odrl:      <http://www.w3.org/ns/odrl/2/> .
+      @prefix ore:       <http://www.openarchives.org/ore/terms/> .
+      @prefix rdfs:      <http://www.w3.org/2000/01/rdf-schema#> .
+      @prefix skos:      <http://www.w3.org/2004/02/skos/core#> .
+      @prefix wgs84_pos: <http://www.w3.org/2003/01/geo/wgs84_pos#> .
+      @prefix xsd:       <http://www.w3.org/2001/XMLSchema#> .
+      """;
+
+  // A valid record, in Turtle (without prefixes).
+  static final String RECORD = """
+      <aggregation> a ore:Aggregation ;
+          edm:aggregatedCHO <cho> ;
+          edm:dataProvider "Data provider" ;
+          edm:provider "Aggregator" ;
+          edm:rights <http://creativecommons.org/publicdomain/zero/1.0/> ;
+          edm:isShownBy <media/0.jpg> ;
+          edm:hasView <media/1.jpg> .
+      <cho> a edm:ProvidedCHO ;
+          dc:title "Portrait of a harbour"@en ;
+          dc:description "A painting of a harbour with a bridge."@en ;
+          dc:identifier "ID-0" ;
+          edm:type "IMAGE" ;
+          dc:creator <agent/0> ;
+          dc:subject <concept/0> ;
+          dcterms:spatial <place/0> ;
+          dcterms:temporal <timespan/0> ;
+          rdfs:seeAlso <related/0> .
+      <media/0.jpg> a edm:WebResource ;
+          dc:format "image/jpeg" ;
+          edm:rights <http://creativecommons.org/publicdomain/zero/1.0/> .
+      <media/1.jpg> a edm:WebResource ;
+          dc:format "image/jpeg" .
+      <agent/0> a edm:Agent ;
+          skos:prefLabel "Painter"@en ;
+          dcterms:hasPart <agent/1> .
+      <agent/1> a edm:Agent ;
+          skos:prefLabel "Workshop"@en .
+      <concept/0> a skos:Concept ;
+          skos:prefLabel "harbour"@en ;
+          skos:narrower <concept/1> .
+      <concept/1> a skos:Concept ;
+          skos:prefLabel "bridge"@en .
+      <place/0> a edm:Place ;
+          skos:prefLabel "Rotterdam"@nl ;
+          wgs84_pos:lat "51.9225" ;
+          wgs84_pos:long "4.4792" .
+      <timespan/0> a edm:TimeSpan ;
+          skos:prefLabel "17th century"@en ;
+          edm:begin "1600" ;
+          edm:end "1699" .
+      <related/0> dcterms:conformsTo "IIIF" .
+      """;
+
+  /**
+   * An edit: the statements to remove from and to add to the record (in Turtle).
+   */
+  private record Edit(String removed, String added) {
+
+  }
+
+  /**
+   * The edits, by name.
+   */
+  private static final Map<String, Edit> EDITS = createEdits();
+
+  private RevalidationEquivalenceCheck() {
+  }
+
+  private static Map<String, Edit> createEdits() {
+    final Map<String, Edit> result = new LinkedHashMap<>();
+    final String title = "<cho> dc:title \"Portrait of a harbour\"@en .";
+    final String description =
+        "<cho> dc:description \"A painting of a harbour with a bridge.\"@en .";
+    final String agentType = "<agent/0> a edm:Agent .";
+    result.put("literal changed", new Edit(title, "<cho> dc:title \"Harbour\"@en ."));
+    result.put("literal removed", new Edit(title, ""));
+    result.put("required literals removed", new Edit(title + "\n" + description, ""));
+    result.put("literal emptied", new Edit(title + "\n" + description,
+        "<cho> dc:title \" \" ."));
+    result.put("value not permitted", new Edit("<cho> edm:type \"IMAGE\" .",
+        "<cho> edm:type \"BOOK\" ."));
+    result.put("value read through a sequence path", new Edit("<cho> edm:type \"IMAGE\" .",
+        "<cho> edm:type \"TEXT\" ."));
+    result.put("link read through a sequence path removed", new Edit(
+        "<aggregation> edm:isShownBy <media/0.jpg> .", ""));
+    result.put("pattern violated", new Edit("", "<aggregation> edm:ugc \"yes\" ."));
+    result.put("required link removed", new Edit(
+        "<aggregation> edm:rights <http://creativecommons.org/publicdomain/zero/1.0/> .", ""));
+    result.put("unsupported property", new Edit("", "<cho> edm:isShownBy <media/0.jpg> ."));
+    result.put("type of linked resource removed", new Edit(agentType, ""));
+    result.put("type of linked resource changed", new Edit(agentType,
+        "<agent/0> a edm:WebResource ."));
+    result.put("type of indirectly linked resource changed", new Edit(
+        "<agent/1> a edm:Agent .", "<agent/1> a edm:WebResource ."));
+    result.put("type added", new Edit("", "<cho> a edm:WebResource ."));
+    result.put("link retargeted", new Edit("<cho> dc:creator <agent/0> .",
+        "<cho> dc:creator <agent/1> ."));
+    result.put("link to unknown resource", new Edit("",
+        "<cho> dc:creator <http://example.org/unknown> ."));
+    result.put("literal instead of link", new Edit("", "<cho> dc:creator \"Someone\" ."));
+    result.put("property of linked resource emptied", new Edit(
+        "<related/0> dcterms:conformsTo \"IIIF\" .", "<related/0> dcterms:conformsTo \" \" ."));
+    result.put("property of linked resource invalid", new Edit(
+        "<place/0> wgs84_pos:lat \"51.9225\" .", "<place/0> wgs84_pos:lat \"north\" ."));
+    result.put("resource added", new Edit("", """
+        <agent/2> a edm:Agent ;
+            skos:prefLabel "Pupil"@en .
+        <agent/0> dcterms:hasPart <agent/2> ."""));
+    result.put("linked resource removed", new Edit("""
+        <concept/1> a skos:Concept ;
+            skos:prefLabel "bridge"@en .""", ""));
+    result.put("orphan added", new Edit("", """
+        <agent/3> a edm:Agent ;
+            skos:prefLabel "Nobody"@en ."""));
+    result.put("aggregation type removed", new Edit("<aggregation> a ore:Aggregation .", ""));
+    result.put("blank node added", new Edit("",
+        "<cho> dc:subject [ a skos:Concept ; skos:prefLabel \"sea\"@en ] ."));
+    return result;
+  }
+
+  /**
+   * Runs the check.
+   *
+   * @param args The arguments (not used).
+   */
+  public static void main(String[] args) {
+    final EdmExternalValidator validator = new EdmExternalValidator();
+    final Model record = parse(RECORD);
+    int checkedEdits = 0;
+    int incrementalRevalidations = 0;
+    int differences = 0;
+    for (Entry<String, Edit> edit : EDITS.entrySet()) {
+      final Model editedRecord = ModelFactory.createDefaultModel().add(record)
+          .remove(parse(edit.getValue().removed())).add(parse(edit.getValue().added()));
+      for (boolean reversed : new boolean[]{false, true}) {
+        final Model previousRecord = reversed ? editedRecord : record;
+        final Model currentRecord = reversed ? record : editedRecord;
+        if (RecordChanges.compute(previousRecord.getGraph(), currentRecord.getGraph()) != null) {
+          incrementalRevalidations++;
+        }
+        final List<String> expected = describe(validator.validateSingleRecord(currentRecord));
+        final List<String> actual = describe(validator.revalidateSingleRecord(previousRecord,
+            validator.validateSingleRecord(previousRecord), currentRecord));
+        checkedEdits++;
+        if (!expected.equals(actual)) {
+          differences++;
+          System.out.println("DIFFERENT REPORTS: " + edit.getKey() + (reversed ? " (reversed)"
+              : ""));
+          System.out.println("  Full validation: " + expected);
+          System.out.println("  Revalidation:    " + actual);
+        }
+      }
+    }
+    System.out.println("Checked " + checkedEdits + " edits (" + incrementalRevalidations
+        + " revalidated incrementally, dependency depth " + RecordChanges.getDependencyDepth()
+        + "): " + differences + " difference(s).");
+    if (differences > 0) {
+      throw new IllegalStateException(
+          "The revalidation differs from the full validation for " + differences + " edit(s).");
+    }
+  }
+
+  private static List<String> describe(ValidationReport report) {
+    final List<String> result = new ArrayList<>();
+    result.add(report.recordId() + " " + report.severity() + " " + report.truncated());
+    final List<String> items = new ArrayList<>();
+    for (ValidationReportItem item : report.reportItems()) {
+      items.add(item.severity() + " " + item.subject() + " " + item.predicate() + " "
+          + item.object() + " " + item.message());
+    }
+    items.sort(null);
+    result.addAll(items);
+    return result;
+  }
+
+  /**
+   * Parses Turtle content, with the prefixes and base IRI of the record.
+   *
+   * @param turtle The content (without prefixes).
+   * @return The parsed content.
+   */
+  static Model parse(String turtle) {
+    final Model model = ModelFactory.createDefaultModel();
+    RDFParserBuilder.create().fromString(PREFIXES + turtle).lang(Lang.TURTLE)
+        .parse(model.getGraph());
+    return model;
+  }
+}
@@ -0,0 +1,118 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import java.util.Set;
+import java.util.function.Predicate;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.shacl.ShaclValidator;
+import org.apache.jena.shacl.Shapes;
+import org.apache.jena.shacl.ValidationReport;
+import org.apache.jena.shacl.engine.constraint.Constraint;
+import org.apache.jena.shacl.parser.NodeShape;
+import org.apache.jena.shacl.parser.PropertyShape;
+import org.apache.jena.shacl.parser.Shape;
+import org.apache.jena.shacl.validation.VLib;
+import org.apache.jena.shacl.validation.ValidationContext;
+
+/**
+ * <p>This class runs the SHACL validation of a record. The target shapes are evaluated one by one,
+ * per focus node, and for node shapes the shape's own constraints and each of its property shapes
+ * are evaluated separately. This way, the listener can profile them, the validation can be
+ * limited to certain shapes or focus nodes, and compiled checks (see {@link CompiledShapes}) can
+ * be used to skip property shapes. Nested shapes (e.g. shapes referenced through
+ * <code>sh:node</code>, and property shapes of property shapes) are evaluated by Jena as part of
+ * the shape that contains them. Only if none of the above apply is the validation delegated to
+ * Jena's validator.
+ * </p>
+ * <p>Jena's API does not guarantee that this gives the same report as Jena's validator. The build
+ * checks this (see {@link CompiledShapesEquivalenceCheck}) for a number of records.
+ * </p>
+ */
+final class ShaclRunner {
+
+  private ShaclRunner() {
+  }
+
+  /**
+   * Validates the data against the shapes.
+   *
+   * @param shapes          The shapes.
+   * @param data            The data.
+   * @param listener        The listener to notify of the evaluation of the individual shapes.
+   * @param selectedShapes  The shapes to validate (a subset of the target shapes). Can be null, in
+   *                        which case all shapes are validated.
+   * @param focusNodeFilter The filter for the focus nodes to validate. Can be null, in which case
+   *                        all focus nodes are validated.
+   * @return The SHACL validation report.
+   */
+  static ValidationReport validate(Shapes shapes, Graph data, ValidationListener listener,
+      Set<Shape> selectedShapes, Predicate<Node> focusNodeFilter) {
+    return validate(shapes, data, listener, selectedShapes, focusNodeFilter, CompiledShapes.get());
+  }
+
+  /**
+   * Validates the data against the shapes, using the given compiled shapes. See
+   * {@link #validate(Shapes, Graph, ValidationListener, Set, Predicate)}.
+   *
+   * @param shapes          The shapes.
+   * @param data            The data.
+   * @param listener        The listener to notify of the evaluation of the individual shapes.
+   * @param selectedShapes  The shapes to validate. Can be null.
+   * @param focusNodeFilter The filter for the focus nodes to validate. Can be null.
+   * @param compiledShapes  The compiled shapes (for the same shapes).
+   * @return The SHACL validation report.
+   */
+  static ValidationReport validate(Shapes shapes, Graph data, ValidationListener listener,
+      Set<Shape> selectedShapes, Predicate<Node> focusNodeFilter,
+      CompiledShapes compiledShapes) {
+    if (!compiledShapes.isEnabled() && !listener.isShapeProfilingEnabled()
+        && selectedShapes == null && focusNodeFilter == null) {
+      return ShaclValidator.get().validate(shapes, data);
+    }
+    final ValidationContext context = ValidationContext.create(shapes, data);
+    for (Shape shape : shapes.getTargetShapes()) {
+      if (selectedShapes != null && !selectedShapes.contains(shape)) {
+        continue;
+      }
+      for (Node focusNode : VLib.focusNodes(data, shape)) {
+        if (focusNodeFilter == null || focusNodeFilter.test(focusNode)) {
+          validateShape(context, data, shape, focusNode, listener, compiledShapes);
+        }
+      }
+    }
+    return context.generateReport();
+  }
+
+  private static void validateShape(ValidationContext context, Graph data, Shape shape,
+      Node focusNode, ValidationListener listener, CompiledShapes compiledShapes) {
+    final boolean profiling = listener.isShapeProfilingEnabled();
+    if (!(shape instanceof NodeShape nodeShape) || shape.deactivated()) {
+      final long start = profiling ? System.nanoTime() : 0;
+      VLib.validateShape(context, data, shape, focusNode);
+      if (profiling) {
+        listener.shapeEvaluated(shape, System.nanoTime() - start);
+      }
+      return;
+    }
+
+    // Evaluate the node shape's own constraints, and then each of its property shapes. Property
+    // shapes to which the focus node is known to conform (see CompiledShapes) can be skipped: Jena
+    // would not report anything for them.
+    final long start = profiling ? System.nanoTime() : 0;
+    for (Constraint constraint : nodeShape.getConstraints()) {
+      constraint.validateNodeShape(context, data, nodeShape, focusNode);
+    }
+    if (profiling) {
+      listener.shapeEvaluated(nodeShape, System.nanoTime() - start);
+    }
+    for (PropertyShape propertyShape : nodeShape.getPropertyShapes()) {
+      final long propertyShapeStart = profiling ? System.nanoTime() : 0;
+      if (!compiledShapes.conforms(propertyShape, data, focusNode)) {
+        VLib.validateShape(context, data, propertyShape, focusNode);
+      }
+      if (profiling) {
+        listener.shapeEvaluated(propertyShape, System.nanoTime() - propertyShapeStart);
+      }
+    }
+  }
+}
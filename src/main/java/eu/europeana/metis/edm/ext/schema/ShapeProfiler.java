@@ -0,0 +1,240 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.shacl.parser.PropertyShape;
+import org.apache.jena.shacl.parser.Shape;
+
+/**
+ * <p>A {@link ValidationListener} that profiles the SHACL validation: it records the cumulative
+ * evaluation time and the number of invocations (i.e. focus nodes) per node shape and per
+ * property shape. Pass an instance to the {@link EdmExternalValidator} and validate a batch of
+ * records, after which the ranked profiles can be obtained using {@link #getRankedProfiles()} or
+ * written to a file using {@link #writeReport(Path)}.
+ * </p>
+ * <p>For node shapes, only the evaluation of the shape's own constraints (e.g. whether the shape
+ * is closed) is counted: its property shapes are profiled separately. Property shapes that are
+ * shared between node shapes are profiled once, over all node shapes.
+ * </p>
+ * <p>Shapes are identified by their IRI. Shapes without IRI (blank nodes, e.g. most property
+ * shapes) are identified by the way in which they are reached from the nearest shape with an IRI
+ * (e.g. <code>http://example.com/AgentShape sh:property</code>), followed by their path for
+ * property shapes. These identifiers are the same in every run, so that reports from different
+ * runs can be compared.
+ * </p>
+ * <p>Instances of this class are thread-safe.</p>
+ */
+public class ShapeProfiler implements ValidationListener {
+
+  private final Map<Node, ShapeStatistics> statistics = new ConcurrentHashMap<>();
+
+  // The descriptions of the blank nodes in the (last used) shapes graph. They are computed once
+  // per shapes graph, and replaced if the shapes of another graph are profiled.
+  private volatile BlankNodeDescriptions blankNodeDescriptions = null;
+
+  private record BlankNodeDescriptions(Graph shapesGraph, Map<Node, String> descriptions) {
+
+  }
+
+  /**
+   * The type of shape.
+   */
+  public enum ShapeType {NODE_SHAPE, PROPERTY_SHAPE}
+
+  /**
+   * The profile of one shape.
+   *
+   * @param shape           The shape (its IRI, or a description, see the class documentation).
+   * @param type            The type of the shape.
+   * @param path            The path of the shape (for property shapes). Can be null.
+   * @param invocationCount The number of times that the shape was evaluated.
+   * @param totalNanos      The total evaluation time of the shape, in nanoseconds.
+   */
+  public record ShapeProfile(String shape, ShapeType type, String path, long invocationCount,
+                             long totalNanos) {
+
+    /**
+     * @return The average evaluation time of the shape, in nanoseconds.
+     */
+    public long averageNanos() {
+      return invocationCount == 0 ? 0 : totalNanos / invocationCount;
+    }
+  }
+
+  private static final class ShapeStatistics {
+
+    private final Shape shape;
+    private final String description;
+    private final ShapeType type;
+    private final String path;
+    private final LongAdder invocationCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    ShapeStatistics(Shape shape, Map<Node, String> blankNodeDescriptions) {
+      this.shape = shape;
+      this.type = shape instanceof PropertyShape ? ShapeType.PROPERTY_SHAPE : ShapeType.NODE_SHAPE;
+      this.path = shape instanceof PropertyShape propertyShape
+          ? propertyShape.getPath().toString() : null;
+      final Node shapeNode = shape.getShapeNode();
+      if (shapeNode.isURI()) {
+        this.description = shapeNode.getURI();
+      } else {
+        final String reference = blankNodeDescriptions.getOrDefault(shapeNode, "[]");
+        this.description = path == null ? reference : (reference + " " + path);
+      }
+    }
+
+    ShapeProfile toProfile(String shapeDescription) {
+      return new ShapeProfile(shapeDescription, type, path, invocationCount.sum(),
+          totalNanos.sum());
+    }
+  }
+
+  @Override
+  public boolean isShapeProfilingEnabled() {
+    return true;
+  }
+
+  @Override
+  public void shapeEvaluated(Shape shape, long durationNanos) {
+
+    // The statistics of a new shape are created outside the map, so that no lock is held while
+    // the shape is described. If another thread was first, its statistics are used.
+    ShapeStatistics shapeStatistics = statistics.get(shape.getShapeNode());
+    if (shapeStatistics == null) {
+      final ShapeStatistics newStatistics = new ShapeStatistics(shape,
+          getBlankNodeDescriptions(shape.getShapeGraph()));
+      shapeStatistics = statistics.putIfAbsent(shape.getShapeNode(), newStatistics);
+      if (shapeStatistics == null) {
+        shapeStatistics = newStatistics;
+      }
+    }
+    shapeStatistics.invocationCount.increment();
+    shapeStatistics.totalNanos.add(durationNanos);
+  }
+
+  /**
+   * @return The profiles of all shapes that were evaluated, ranked by total evaluation time (the
+   * most expensive first).
+   */
+  public List<ShapeProfile> getRankedProfiles() {
+
+    // Shapes that are reached in the same way with the same path (e.g. two property shapes for the
+    // same property in one node shape) are told apart by their own content.
+    final Map<String, List<ShapeStatistics>> byDescription = statistics.values().stream()
+        .collect(Collectors.groupingBy(shapeStatistics -> shapeStatistics.description));
+    final List<ShapeProfile> result = new ArrayList<>();
+    byDescription.forEach((description, group) -> group.forEach(shapeStatistics ->
+        result.add(shapeStatistics.toProfile(group.size() == 1 ? description
+            : (description + " " + describeContent(shapeStatistics.shape))))));
+    result.sort(Comparator.comparingLong(ShapeProfile::totalNanos).reversed());
+    return result;
+  }
+
+  private Map<Node, String> getBlankNodeDescriptions(Graph shapesGraph) {
+    final BlankNodeDescriptions current = blankNodeDescriptions;
+    if (current != null && current.shapesGraph() == shapesGraph) {
+      return current.descriptions();
+    }
+
+    // Computing the descriptions concurrently in multiple threads gives the same result.
+    final BlankNodeDescriptions computed =
+        new BlankNodeDescriptions(shapesGraph, describeBlankNodes(shapesGraph));
+    blankNodeDescriptions = computed;
+    return computed.descriptions();
+  }
+
+  /**
+   * Describes the blank nodes in the shapes graph by the way in which they are reached from the
+   * nearest IRI: the description of the referencing node, followed by the predicate. If there are
+   * multiple ways, the (alphabetically) first description is used, so that the result does not
+   * depend on blank node labels or on the order of the triples. As a description is always larger
+   * than the description of the referencing node, the descriptions are computed in one pass in
+   * alphabetical order (like shortest paths), so that shared nested blank nodes are only
+   * described once. Blank nodes that can not be reached from an IRI are not included.
+   */
+  private static Map<Node, String> describeBlankNodes(Graph graph) {
+    final PriorityQueue<Entry<String, Node>> queue =
+        new PriorityQueue<>(Entry.comparingByKey());
+    graph.find().forEachRemaining(triple -> {
+      if (triple.getSubject().isURI() && triple.getObject().isBlank()) {
+        queue.add(Map.entry(describeReference(graph, triple.getSubject().getURI(), triple),
+            triple.getObject()));
+      }
+    });
+    final Map<Node, String> result = new HashMap<>();
+    while (!queue.isEmpty()) {
+      final Entry<String, Node> next = queue.poll();
+      if (result.putIfAbsent(next.getValue(), next.getKey()) == null) {
+        graph.find(next.getValue(), Node.ANY, Node.ANY).forEachRemaining(triple -> {
+          if (triple.getObject().isBlank() && !result.containsKey(triple.getObject())) {
+            queue.add(Map.entry(describeReference(graph, next.getKey(), triple),
+                triple.getObject()));
+          }
+        });
+      }
+    }
+    return result;
+  }
+
+  private static String describeReference(Graph graph, String subjectDescription,
+      Triple reference) {
+    return subjectDescription + " "
+        + graph.getPrefixMapping().shortForm(reference.getPredicate().getURI());
+  }
+
+  /**
+   * Describes the content of a shape: its own (sorted) properties, with nested blank nodes shown
+   * as <code>[]</code>.
+   */
+  private static String describeContent(Shape shape) {
+    final Graph graph = shape.getShapeGraph();
+    return graph.find(shape.getShapeNode(), Node.ANY, Node.ANY).toList().stream()
+        .map(triple -> graph.getPrefixMapping().shortForm(triple.getPredicate().getURI()) + " "
+            + (triple.getObject().isBlank() ? "[]" : triple.getObject().toString()))
+        .sorted().collect(Collectors.joining("; ", "{", "}"));
+  }
+
+  /**
+   * Writes the ranked profiles to a file, as tab-separated values with a header line. Times are
+   * given in microseconds.
+   *
+   * @param file The file to write to. It is overwritten if it exists.
+   * @throws IOException In case the file could not be written.
+   */
+  public void writeReport(Path file) throws IOException {
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      writer.write("rank\tshape\ttype\tpath\tinvocations\ttotal_us\taverage_us\n");
+      int rank = 1;
+      for (ShapeProfile profile : getRankedProfiles()) {
+        writer.write(rank + "\t" + profile.shape() + "\t" + profile.type() + "\t"
+            + (profile.path() == null ? "" : profile.path()) + "\t" + profile.invocationCount()
+            + "\t" + profile.totalNanos() / 1000 + "\t" + profile.averageNanos() / 1000 + "\n");
+        rank++;
+      }
+    }
+  }
+
+  /**
+   * Clears all profiles collected so far.
+   */
+  public void reset() {
+    statistics.clear();
+  }
+}
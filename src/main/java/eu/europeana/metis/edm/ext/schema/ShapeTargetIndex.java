@@ -0,0 +1,133 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.shacl.Shapes;
+import org.apache.jena.shacl.engine.Target;
+import org.apache.jena.shacl.engine.TargetType;
+import org.apache.jena.shacl.parser.Shape;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+
+/**
+ * <p>This class indexes the shapes by the types that they target, so that a record only needs to
+ * be validated against the shapes that can have focus nodes in it. A resource of a given type is
+ * a focus node for all shapes that target that type or any of its supertypes (in the
+ * {@link SupportedResourceTypes} hierarchy). For each type, the index holds the shapes that target
+ * the type or any of its supertypes.
+ * </p>
+ * <p>Shapes with other kinds of targets (e.g. <code>sh:targetNode</code>) are always selected, as
+ * are shapes that target the types of resources in the type hierarchy itself (as the hierarchy is
+ * part of the data that is validated). If the record defines its own subclass relations, the
+ * hierarchy of the record's types can not be known in advance, and all shapes are selected.
+ * </p>
+ */
+final class ShapeTargetIndex {
+
+  private final Set<Shape> alwaysSelectedShapes;
+  private final Map<Node, Set<Shape>> shapesByTargetClass;
+  private final Map<Node, Set<Shape>> shapesByType;
+
+  private ShapeTargetIndex(Shapes shapes, Graph typeHierarchy) {
+
+    // Index the shapes by the class that they target.
+    final Set<Shape> shapesWithOtherTargets = new HashSet<>();
+    final Map<Node, Set<Shape>> targetClassIndex = new HashMap<>();
+    for (Shape shape : shapes.getTargetShapes()) {
+      for (Target target : shape.getTargets()) {
+        if (target.getTargetType() == TargetType.targetClass
+            || target.getTargetType() == TargetType.implicitClass) {
+          targetClassIndex.computeIfAbsent(target.getObject(), key -> new HashSet<>()).add(shape);
+        } else {
+          shapesWithOtherTargets.add(shape);
+        }
+      }
+    }
+    this.shapesByTargetClass = targetClassIndex;
+
+    // For all types in the hierarchy, find the shapes that target the type or its supertypes.
+    final Set<Node> types = new HashSet<>(targetClassIndex.keySet());
+    typeHierarchy.find(Node.ANY, RDFS.subClassOf.asNode(), Node.ANY).forEachRemaining(triple -> {
+      types.add(triple.getSubject());
+      types.add(triple.getObject());
+    });
+    final Map<Node, Set<Shape>> typeIndex = new HashMap<>();
+    for (Node type : types) {
+      final Set<Shape> selectedShapes = new HashSet<>();
+      final Set<Node> visited = new HashSet<>();
+      final ArrayDeque<Node> queue = new ArrayDeque<>();
+      queue.add(type);
+      while (!queue.isEmpty()) {
+        final Node superType = queue.removeFirst();
+        if (visited.add(superType)) {
+          selectedShapes.addAll(targetClassIndex.getOrDefault(superType, Collections.emptySet()));
+          typeHierarchy.find(superType, RDFS.subClassOf.asNode(), Node.ANY)
+              .forEachRemaining(triple -> queue.addLast(triple.getObject()));
+        }
+      }
+      typeIndex.put(type, Collections.unmodifiableSet(selectedShapes));
+    }
+    this.shapesByType = typeIndex;
+
+    // Add the shapes that target resources in the type hierarchy itself.
+    final Set<Shape> alwaysSelected = new HashSet<>(shapesWithOtherTargets);
+    typeHierarchy.find(Node.ANY, RDF.type.asNode(), Node.ANY)
+        .forEachRemaining(triple -> alwaysSelected.addAll(getShapesForType(triple.getObject())));
+    this.alwaysSelectedShapes = Collections.unmodifiableSet(alwaysSelected);
+  }
+
+  /**
+   * Gets the one instance of this class, for the validation shapes. This method does not lock, and
+   * the instance can be used concurrently by multiple validations.
+   *
+   * @return Instance of this class.
+   */
+  static ShapeTargetIndex get() {
+    return Holder.INSTANCE.get("the shape target index");
+  }
+
+  private Set<Shape> getShapesForType(Node type) {
+    final Set<Shape> result = shapesByType.get(type);
+    return result != null ? result
+        : shapesByTargetClass.getOrDefault(type, Collections.emptySet());
+  }
+
+  /**
+   * Selects the shapes that can have focus nodes in the given record. Validating the record
+   * against only these shapes gives the same result as validating it against all shapes.
+   *
+   * @param record The record (without the type hierarchy).
+   * @return The selected shapes, or null if all shapes need to be validated.
+   */
+  Set<Shape> selectShapes(Graph record) {
+    if (record.contains(Node.ANY, RDFS.subClassOf.asNode(), Node.ANY)) {
+      return null;
+    }
+    final Set<Shape> result = new HashSet<>(alwaysSelectedShapes);
+    final Set<Node> recordTypes = new HashSet<>();
+    record.find(Node.ANY, RDF.type.asNode(), Node.ANY).forEachRemaining(triple -> {
+      if (recordTypes.add(triple.getObject())) {
+        result.addAll(getShapesForType(triple.getObject()));
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Lazy initialization holder: the instance is created when this class is first accessed, after
+   * which it is read without synchronization. A failure is kept and reported on every access (see
+   * {@link LoadResult}).
+   */
+  private static final class Holder {
+
+    private static final LoadResult<ShapeTargetIndex> INSTANCE = LoadResult.load(
+        () -> new ShapeTargetIndex(ValidationShapes.get(),
+            SupportedResourceTypes.get().getTypeHierarchyGraph()));
+  }
+}
@@ -0,0 +1,63 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+
+/**
+ * <p>Build-time tool that performs the OWL inference on the SHACL shape definitions and writes the
+ * result as a materialized, reasoner-free N-Triples file. This file is then shipped with the
+ * library and loaded directly at runtime (see {@link ValidationShapes}), avoiding the cost of
+ * running the reasoner in every fresh JVM.
+ * </p>
+ * <p>Usage: <code>ShapesPrecompiler &lt;output file&gt;</code> writes the precompiled shapes, and
+ * <code>ShapesPrecompiler --verify</code> checks that the precompiled shapes on the classpath
+ * match the source definitions (exiting with a non-zero status if they don't).
+ * </p>
+ */
+public final class ShapesPrecompiler {
+
+  private static final String VERIFY_OPTION = "--verify";
+
+  private ShapesPrecompiler() {
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args The arguments: either the output file, or the verify option.
+   * @throws IOException In case the output file could not be written.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      throw new IllegalArgumentException(
+          "Expected one argument: the output file or " + VERIFY_OPTION + ".");
+    }
+    if (VERIFY_OPTION.equals(args[0])) {
+      if (!ValidationShapes.precompiledShapesMatchSource()) {
+        System.err.println("The precompiled shapes are missing or do not match the source.");
+        System.exit(1);
+      }
+      return;
+    }
+    writePrecompiledShapes(Path.of(args[0]));
+  }
+
+  /**
+   * Materializes the shapes and writes them to the given file.
+   *
+   * @param outputFile The file to write the precompiled shapes to.
+   * @throws IOException In case the output file could not be written.
+   */
+  static void writePrecompiledShapes(Path outputFile) throws IOException {
+    final Graph shapesGraph = ValidationShapes.materializeSourceShapes();
+    Files.createDirectories(outputFile.toAbsolutePath().getParent());
+    try (OutputStream outputStream = Files.newOutputStream(outputFile)) {
+      RDFDataMgr.write(outputStream, shapesGraph, RDFFormat.NTRIPLES);
+    }
+  }
+}
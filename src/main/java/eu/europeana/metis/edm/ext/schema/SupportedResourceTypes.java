@@ -4,12 +4,15 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.compose.Union;
 import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.query.QueryFactory;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.riot.Lang;
+import org.apache.jena.sparql.graph.GraphReadOnly;
 
 /**
  * This class represents the hierarchy of supported types. The supported types are types that are
@@ -18,16 +21,18 @@ import org.apache.jena.riot.Lang;
  */
 public class SupportedResourceTypes {
 
-  private static SupportedResourceTypes instance = null;
+  static final String CLASS_DEFINITIONS_RESOURCE = "schema/edm_ext_class_definitions.ttl";
 
   private final Model typeHierarchyModel;
+  private final Graph typeHierarchyGraph;
   private final Set<String> supportedResourceTypes;
 
   private SupportedResourceTypes() {
 
     // Parse the class definitions and type categorization.
     this.typeHierarchyModel = ModelFactory.createDefaultModel().read(
-        "schema/edm_ext_class_definitions.ttl", Lang.TTL.getLabel());
+        CLASS_DEFINITIONS_RESOURCE, Lang.TTL.getLabel());
+    this.typeHierarchyGraph = new GraphReadOnly(this.typeHierarchyModel.getGraph());
 
     // From the type categorization, extract the types that are supported: all subtypes of EdmClass.
     final String supportedTypesQuery = """
@@ -49,15 +54,13 @@ public class SupportedResourceTypes {
   }
 
   /**
-   * Gets the one instance of this class.
+   * Gets the one instance of this class. This method does not lock, and the instance can be used
+   * concurrently by multiple validations.
    *
    * @return Instance of this class.
    */
-  public static synchronized SupportedResourceTypes get() {
-    if (instance == null) {
-      instance = new SupportedResourceTypes();
-    }
-    return instance;
+  public static SupportedResourceTypes get() {
+    return Holder.INSTANCE.get("the supported resource types");
   }
 
   /**
@@ -71,11 +74,43 @@ public class SupportedResourceTypes {
   }
 
   /**
-   * This method adds the full type hierarchy to a provided model.
+   * This method adds the full type hierarchy to a provided model. Note that this copies the type
+   * hierarchy into the model. Consider using {@link #withTypeHierarchy(Graph)} instead.
    *
    * @param model The model to which to add the type hierarchy.
    */
   public void addTypeHierarchyToModel(Model model) {
     model.add(typeHierarchyModel);
   }
+
+  /**
+   * This method returns a read-only view of the provided graph combined with the full type
+   * hierarchy. Nothing is copied: the view is backed by the provided graph and by a shared,
+   * immutable type hierarchy graph. It is therefore cheap to create, and multiple views can be
+   * read concurrently.
+   *
+   * @param graph The graph to combine with the type hierarchy.
+   * @return The combined view.
+   */
+  public Graph withTypeHierarchy(Graph graph) {
+    return new GraphReadOnly(new Union(graph, typeHierarchyGraph));
+  }
+
+  /**
+   * @return The type hierarchy as a read-only graph.
+   */
+  Graph getTypeHierarchyGraph() {
+    return typeHierarchyGraph;
+  }
+
+  /**
+   * Lazy initialization holder: the instance is created when this class is first accessed, after
+   * which it is read without synchronization. A failure is kept and reported on every access (see
+   * {@link LoadResult}).
+   */
+  private static final class Holder {
+
+    private static final LoadResult<SupportedResourceTypes> INSTANCE =
+        LoadResult.load(SupportedResourceTypes::new);
+  }
 }
@@ -0,0 +1,71 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import org.apache.jena.shacl.parser.Shape;
+
+/**
+ * <p>Implementations of this interface can be notified of the progress of validations performed by
+ * {@link EdmExternalValidator}, e.g. to feed a metrics system. All methods have an empty default
+ * implementation, so that implementations only need to override what they are interested in.
+ * </p>
+ * <p>Note: the methods are called synchronously from the validating thread, so they should return
+ * quickly. If the validator is used concurrently, the listener is also called concurrently.
+ * </p>
+ */
+public interface ValidationListener {
+
+  /**
+   * A listener that does nothing. This is the default.
+   */
+  ValidationListener NO_OP = new ValidationListener() {
+  };
+
+  /**
+   * Called when a phase of the validation of a record has completed. Phases that are not
+   * applicable to a record (e.g. the pre-validation for a record that is not in RDF/XML, or the
+   * checks on a record that could not be parsed) are not reported.
+   *
+   * @param phase           The phase that completed.
+   * @param durationNanos   The wall time that the phase took, in nanoseconds. For RDF/XML records,
+   *                        the pre-validation is performed while parsing: the parsing time then
+   *                        includes the pre-validation time.
+   * @param tripleCount     The number of triples in the record at the end of the phase, or -1 if
+   *                        not applicable (i.e. for the pre-validation).
+   * @param reportItemCount The number of report items that the phase produced.
+   */
+  default void phaseCompleted(ValidationPhase phase, long durationNanos, long tripleCount,
+      int reportItemCount) {
+  }
+
+  /**
+   * Called when the validation of a record has completed.
+   *
+   * @param inputSize     The size of the input, in bytes, or -1 if the record was not provided as
+   *                      serialized data.
+   * @param durationNanos The wall time that the validation took, in nanoseconds.
+   * @param report        The resulting report.
+   */
+  default void recordCompleted(long inputSize, long durationNanos, ValidationReport report) {
+  }
+
+  /**
+   * Whether this listener wishes to be notified of the evaluation of individual SHACL shapes (see
+   * {@link #shapeEvaluated(Shape, long)}). This requires the shapes to be evaluated one by one,
+   * which adds some overhead, so it is disabled by default.
+   *
+   * @return Whether shape profiling is enabled.
+   */
+  default boolean isShapeProfilingEnabled() {
+    return false;
+  }
+
+  /**
+   * Called when a SHACL shape has been evaluated for a focus node. Only called if
+   * {@link #isShapeProfilingEnabled()} returns true. For node shapes, the duration only covers the
+   * constraints of the node shape itself: its property shapes are reported separately.
+   *
+   * @param shape         The shape that was evaluated.
+   * @param durationNanos The wall time that the evaluation took, in nanoseconds.
+   */
+  default void shapeEvaluated(Shape shape, long durationNanos) {
+  }
+}
@@ -0,0 +1,43 @@
+package eu.europeana.metis.edm.ext.schema;
+
+/**
+ * <p>Options for the validation performed by {@link EdmExternalValidator}. These can be used to
+ * limit the work spent on records with many issues (e.g. a badly broken dataset), at the expense
+ * of the completeness of the reports. A report for which validation was cut short is marked as
+ * truncated (see {@link ValidationReport#truncated()}). If validation stops during the XML
+ * pre-validation, the rest of the record is not read, and the report has no record ID.
+ * </p>
+ *
+ * @param stopAtFirstError            Whether to stop validating a record as soon as an issue with
+ *                                    severity {@link ValidationIssueSeverity#ERROR} is found. The
+ *                                    report will then contain the items found up to and including
+ *                                    that error.
+ * @param maxReportItems              The maximum number of items in a report. Must be positive.
+ *                                    Validation of a record stops when the maximum is reached.
+ * @param skipShaclAfterGlobalFailure Whether to skip the validation against the SHACL shapes if
+ *                                    the checks preceding it (the XML pre-validation and the ID,
+ *                                    type and orphan checks) found an issue with severity
+ *                                    {@link ValidationIssueSeverity#ERROR}.
+ */
+public record ValidationOptions(boolean stopAtFirstError, int maxReportItems,
+                                boolean skipShaclAfterGlobalFailure) {
+
+  /**
+   * The default options: validation is always complete.
+   */
+  public static final ValidationOptions DEFAULT =
+      new ValidationOptions(false, Integer.MAX_VALUE, false);
+
+  /**
+   * Constructor.
+   *
+   * @param stopAtFirstError            Whether to stop at the first error.
+   * @param maxReportItems              The maximum number of items in a report.
+   * @param skipShaclAfterGlobalFailure Whether to skip the SHACL validation after a global error.
+   */
+  public ValidationOptions {
+    if (maxReportItems < 1) {
+      throw new IllegalArgumentException("The maximum number of report items must be positive.");
+    }
+  }
+}
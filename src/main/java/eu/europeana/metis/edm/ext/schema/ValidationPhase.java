@@ -0,0 +1,44 @@
+package eu.europeana.metis.edm.ext.schema;
+
+/**
+ * The phases of the validation of a record, in the order in which they are performed. See
+ * {@link ValidationListener}.
+ */
+public enum ValidationPhase {
+
+  /**
+   * The XML-specific normalization and pre-validation (only for RDF/XML records). Note that this
+   * phase is performed while the record is being parsed.
+   */
+  PRE_VALIDATION,
+
+  /**
+   * The parsing of the record into a model.
+   */
+  PARSING,
+
+  /**
+   * The check that the record has exactly one <code>edm:ProvidedCHO</code>.
+   */
+  ID_CHECK,
+
+  /**
+   * The check that all resources have a declared and supported type.
+   */
+  TYPE_CHECK,
+
+  /**
+   * The check that all resources are reachable from an aggregation.
+   */
+  ORPHAN_CHECK,
+
+  /**
+   * The addition of the type hierarchy to the data to validate.
+   */
+  TYPE_HIERARCHY,
+
+  /**
+   * The validation against the SHACL shapes.
+   */
+  SHACL
+}
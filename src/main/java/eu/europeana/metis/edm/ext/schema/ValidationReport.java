@@ -1,5 +1,6 @@
 package eu.europeana.metis.edm.ext.schema;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -15,9 +16,23 @@ import java.util.Optional;
  *                    If no issues are reported, this value is <code>null</code>.
  * @param reportItems The list of report items: issues that were detected. Can be emtpy, but is
  *                    never <code>null</code>.
+ * @param truncated   Whether the validation was cut short (see {@link ValidationOptions}), in which
+ *                    case the report may not contain all issues in the record.
  */
 public record ValidationReport(String recordId, ValidationIssueSeverity severity,
-                               List<ValidationReportItem> reportItems) {
+                               List<ValidationReportItem> reportItems, boolean truncated) {
+
+  /**
+   * Constructor for a report that is not truncated.
+   *
+   * @param recordId    The record ID. Can be null.
+   * @param severity    The severity of the issues encountered. Can be null.
+   * @param reportItems The report items.
+   */
+  public ValidationReport(String recordId, ValidationIssueSeverity severity,
+      List<ValidationReportItem> reportItems) {
+    this(recordId, severity, reportItems, false);
+  }
 
   /**
    * Creates a validation report for the given record ID and report items, where the severity will
@@ -28,10 +43,24 @@ public record ValidationReport(String recordId, ValidationIssueSeverity severity
    * @return An instance.
    */
   public static ValidationReport of(String recordId, List<ValidationReportItem> reportItems) {
+    return of(recordId, reportItems, false);
+  }
+
+  /**
+   * Creates a validation report for the given record ID and report items, where the severity will
+   * be the highest severity encountered in any of the report items.
+   *
+   * @param recordId    The record ID. Can be null.
+   * @param reportItems The report items. Can be null.
+   * @param truncated   Whether the validation was cut short.
+   * @return An instance.
+   */
+  public static ValidationReport of(String recordId, List<ValidationReportItem> reportItems,
+      boolean truncated) {
     final List<ValidationReportItem> nonNullItems = Optional.ofNullable(reportItems)
         .orElse(Collections.emptyList());
     return new ValidationReport(recordId, nonNullItems.stream().map(ValidationReportItem::severity)
-        .max(ValidationIssueSeverity.comparator()).orElse(null), reportItems);
+        .max(ValidationIssueSeverity.comparator()).orElse(null), reportItems, truncated);
   }
 
   /**
@@ -46,8 +75,8 @@ public record ValidationReport(String recordId, ValidationIssueSeverity severity
     if (additionalReportItems == null || additionalReportItems.isEmpty()) {
       return report;
     }
-    final List<ValidationReportItem> allItems = report.reportItems;
+    final List<ValidationReportItem> allItems = new ArrayList<>(report.reportItems);
     allItems.addAll(additionalReportItems);
-    return of(report.recordId, Collections.unmodifiableList(allItems));
+    return of(report.recordId, Collections.unmodifiableList(allItems), report.truncated);
   }
 }
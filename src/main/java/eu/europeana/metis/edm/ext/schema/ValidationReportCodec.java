@@ -0,0 +1,321 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>This class provides a compact binary encoding for sequences of {@link ValidationReport}
+ * instances, e.g. for the reports of a dataset. Reports are encoded and decoded one at a time, so
+ * that a sequence never needs to be held in memory as a whole.
+ * </p>
+ * <p>The encoding is as follows. The stream starts with a header: the magic number
+ * <code>EVRC</code> followed by a format version byte. Each report is then encoded as a byte
+ * <code>1</code>, followed by the record ID, the severity, the truncated flag and the items. The
+ * sequence ends with a byte <code>0</code>. Integers are encoded as unsigned variable-length
+ * integers (7 bits per byte, least significant group first), severities as a single byte, and
+ * strings as their length followed by their UTF-8 bytes.
+ * </p>
+ * <p>The subjects, predicates and messages of the items are strings that tend to repeat many times
+ * in a sequence. They are dictionary-encoded: each of these fields has its own dictionary, that is
+ * built up while encoding (and decoding) the sequence. The first occurrence of a string is written
+ * in full and added to the dictionary, later occurrences are written as their index in the
+ * dictionary. The dictionaries are bounded in size: once a dictionary is full, new strings are
+ * written in full without being added.
+ * </p>
+ */
+public final class ValidationReportCodec {
+
+  private static final byte[] MAGIC = "EVRC".getBytes(StandardCharsets.US_ASCII);
+  private static final int FORMAT_VERSION = 1;
+
+  private static final int END_OF_SEQUENCE = 0;
+  private static final int REPORT = 1;
+
+  // Codes for strings: other values are dictionary references (the index plus REFERENCE_OFFSET).
+  private static final int NULL_STRING = 0;
+  private static final int NEW_STRING = 1;
+  private static final int UNSHARED_STRING = 2;
+  private static final int REFERENCE_OFFSET = 3;
+
+  private static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+  private ValidationReportCodec() {
+  }
+
+  /**
+   * Creates an encoder that writes to the given output stream. The header is written immediately.
+   *
+   * @param output The output stream. Is closed when the encoder is closed.
+   * @return The encoder.
+   * @throws IOException In case the header could not be written.
+   */
+  public static Encoder newEncoder(OutputStream output) throws IOException {
+    return new Encoder(output);
+  }
+
+  /**
+   * Creates a decoder that reads from the given input stream. The header is read immediately.
+   *
+   * @param input The input stream. Is closed when the decoder is closed.
+   * @return The decoder.
+   * @throws IOException In case the header could not be read, or the input is not in a supported
+   *                     format.
+   */
+  public static Decoder newDecoder(InputStream input) throws IOException {
+    return new Decoder(input);
+  }
+
+  private static int encodeSeverity(ValidationIssueSeverity severity) {
+    if (severity == null) {
+      return 0;
+    }
+    return switch (severity) {
+      case INFO -> 1;
+      case WARNING -> 2;
+      case ERROR -> 3;
+    };
+  }
+
+  private static ValidationIssueSeverity decodeSeverity(int code) throws IOException {
+    return switch (code) {
+      case 0 -> null;
+      case 1 -> ValidationIssueSeverity.INFO;
+      case 2 -> ValidationIssueSeverity.WARNING;
+      case 3 -> ValidationIssueSeverity.ERROR;
+      default -> throw new IOException("Unknown severity code: " + code);
+    };
+  }
+
+  /**
+   * Encodes a sequence of reports. Instances of this class are not thread-safe.
+   */
+  public static final class Encoder implements Closeable {
+
+    private final OutputStream output;
+    private final Map<String, Integer> subjects = new HashMap<>();
+    private final Map<String, Integer> predicates = new HashMap<>();
+    private final Map<String, Integer> messages = new HashMap<>();
+    private boolean finished = false;
+
+    private Encoder(OutputStream output) throws IOException {
+      this.output = new BufferedOutputStream(output);
+      this.output.write(MAGIC);
+      this.output.write(FORMAT_VERSION);
+    }
+
+    /**
+     * Encodes a report.
+     *
+     * @param report The report.
+     * @throws IOException In case the report could not be written.
+     */
+    public void write(ValidationReport report) throws IOException {
+      if (finished) {
+        throw new IllegalStateException("The encoder is already finished.");
+      }
+      output.write(REPORT);
+      writeString(report.recordId());
+      output.write(encodeSeverity(report.severity()));
+      output.write(report.truncated() ? 1 : 0);
+      writeVarInt(report.reportItems().size());
+      for (ValidationReportItem item : report.reportItems()) {
+        writeString(item.subject(), subjects);
+        writeString(item.predicate(), predicates);
+        writeString(item.object());
+        writeString(item.message(), messages);
+        output.write(encodeSeverity(item.severity()));
+      }
+    }
+
+    /**
+     * Ends the sequence of reports and flushes the output. No reports can be written after this.
+     * This is done automatically when the encoder is closed.
+     *
+     * @throws IOException In case the output could not be written.
+     */
+    public void finish() throws IOException {
+      if (!finished) {
+        output.write(END_OF_SEQUENCE);
+        output.flush();
+        finished = true;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        finish();
+      } finally {
+        output.close();
+      }
+    }
+
+    private void writeString(String value, Map<String, Integer> dictionary) throws IOException {
+      if (value == null) {
+        writeVarInt(NULL_STRING);
+        return;
+      }
+      final Integer index = dictionary.get(value);
+      if (index != null) {
+        writeVarInt(index + REFERENCE_OFFSET);
+      } else if (dictionary.size() < MAX_DICTIONARY_SIZE) {
+        dictionary.put(value, dictionary.size());
+        writeVarInt(NEW_STRING);
+        writeBytes(value);
+      } else {
+        writeVarInt(UNSHARED_STRING);
+        writeBytes(value);
+      }
+    }
+
+    private void writeString(String value) throws IOException {
+      if (value == null) {
+        writeVarInt(NULL_STRING);
+      } else {
+        writeVarInt(UNSHARED_STRING);
+        writeBytes(value);
+      }
+    }
+
+    private void writeBytes(String value) throws IOException {
+      final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeVarInt(bytes.length);
+      output.write(bytes);
+    }
+
+    private void writeVarInt(int value) throws IOException {
+      int remaining = value;
+      while ((remaining & ~0x7F) != 0) {
+        output.write((remaining & 0x7F) | 0x80);
+        remaining >>>= 7;
+      }
+      output.write(remaining);
+    }
+  }
+
+  /**
+   * Decodes a sequence of reports. Instances of this class are not thread-safe.
+   */
+  public static final class Decoder implements Closeable {
+
+    private final InputStream input;
+    private final List<String> subjects = new ArrayList<>();
+    private final List<String> predicates = new ArrayList<>();
+    private final List<String> messages = new ArrayList<>();
+    private boolean finished = false;
+
+    private Decoder(InputStream input) throws IOException {
+      this.input = new BufferedInputStream(input);
+      for (byte expected : MAGIC) {
+        if (readByte() != (expected & 0xFF)) {
+          throw new IOException("The input is not an encoded sequence of validation reports.");
+        }
+      }
+      final int version = readByte();
+      if (version != FORMAT_VERSION) {
+        throw new IOException("Unsupported format version: " + version);
+      }
+    }
+
+    /**
+     * Decodes the next report.
+     *
+     * @return The report, or null if the end of the sequence is reached. The report items are in
+     * a new (modifiable) list.
+     * @throws IOException In case the report could not be read.
+     */
+    public ValidationReport read() throws IOException {
+      if (finished) {
+        return null;
+      }
+      final int marker = readByte();
+      if (marker == END_OF_SEQUENCE) {
+        finished = true;
+        return null;
+      }
+      if (marker != REPORT) {
+        throw new IOException("Unexpected marker: " + marker);
+      }
+      final String recordId = readString(null);
+      final ValidationIssueSeverity severity = decodeSeverity(readByte());
+      final boolean truncated = readByte() != 0;
+      final int itemCount = readVarInt();
+      final List<ValidationReportItem> items = new ArrayList<>(Math.min(itemCount, 1024));
+      for (int i = 0; i < itemCount; i++) {
+        final String subject = readString(subjects);
+        final String predicate = readString(predicates);
+        final String object = readString(null);
+        final String message = readString(messages);
+        items.add(new ValidationReportItem(subject, predicate, object, message,
+            decodeSeverity(readByte())));
+      }
+      return new ValidationReport(recordId, severity, items, truncated);
+    }
+
+    @Override
+    public void close() throws IOException {
+      input.close();
+    }
+
+    private String readString(List<String> dictionary) throws IOException {
+      final int code = readVarInt();
+      if (code == NULL_STRING) {
+        return null;
+      }
+      if (code == NEW_STRING || code == UNSHARED_STRING) {
+        final String value = readBytes();
+        if (code == NEW_STRING) {
+          if (dictionary == null) {
+            throw new IOException("Unexpected dictionary entry.");
+          }
+          dictionary.add(value);
+        }
+        return value;
+      }
+      final int index = code - REFERENCE_OFFSET;
+      if (dictionary == null || index >= dictionary.size()) {
+        throw new IOException("Invalid dictionary reference: " + index);
+      }
+      return dictionary.get(index);
+    }
+
+    private String readBytes() throws IOException {
+      final int length = readVarInt();
+      final byte[] bytes = input.readNBytes(length);
+      if (bytes.length < length) {
+        throw new EOFException();
+      }
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int readVarInt() throws IOException {
+      int result = 0;
+      for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+        final int value = readByte();
+        result |= (value & 0x7F) << shift;
+        if ((value & 0x80) == 0 && result >= 0) {
+          return result;
+        }
+      }
+      throw new IOException("Malformed variable-length integer.");
+    }
+
+    private int readByte() throws IOException {
+      final int value = input.read();
+      if (value < 0) {
+        throw new EOFException();
+      }
+      return value;
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>This class collects the report items for a record during validation, applying the
+ * {@link ValidationOptions}. Items are counted in the order in which they are found. The
+ * validation of the record should stop (i.e. skip the remaining phases) as soon as
+ * {@link #shouldContinue()} returns false.
+ * </p>
+ * <p>Items are either passed on to a {@link ValidationReportSink} as they are added, or kept in
+ * memory to be returned in the report. In the latter case, items can be added as trailing items:
+ * these count towards the limits in the order in which they are added, but are placed after the
+ * other items in the report. This is used for the results of the XML pre-validation, which are
+ * found first but have always been reported last.
+ * </p>
+ * <p>The strings in the items are shared within the record: issues tend to be repeated many times
+ * with the same message, for the same property or for the same resource.
+ * </p>
+ * <p>Instances of this class are not thread-safe.</p>
+ */
+final class ValidationReportCollector {
+
+  private final ValidationOptions options;
+  private final ValidationReportSink<?> sink;
+  private final List<ValidationReportItem> items = new ArrayList<>();
+  private final List<ValidationReportItem> trailingItems = new ArrayList<>();
+  private final Map<String, String> sharedStrings = new HashMap<>();
+  private int itemCount = 0;
+  private ValidationIssueSeverity severity = null;
+  private boolean stopped = false;
+  private boolean truncated = false;
+  private Exception sinkFailure = null;
+
+  /**
+   * Constructor for a collector that keeps the items in memory.
+   *
+   * @param options The options to apply.
+   */
+  ValidationReportCollector(ValidationOptions options) {
+    this(options, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param options The options to apply.
+   * @param sink    The sink to pass the items on to. Can be null, in which case the items are kept
+   *                in memory.
+   */
+  ValidationReportCollector(ValidationOptions options, ValidationReportSink<?> sink) {
+    this.options = options;
+    this.sink = sink;
+  }
+
+  /**
+   * Adds a report item.
+   *
+   * @param item The item to add.
+   * @return Whether the validation should continue (see {@link #shouldContinue()}).
+   */
+  boolean add(ValidationReportItem item) {
+    return add(item, items);
+  }
+
+  /**
+   * Adds report items.
+   *
+   * @param newItems The items to add.
+   * @return Whether the validation should continue (see {@link #shouldContinue()}).
+   */
+  boolean addAll(List<ValidationReportItem> newItems) {
+    final Iterator<ValidationReportItem> iterator = newItems.iterator();
+    while (iterator.hasNext()) {
+      if (!add(iterator.next(), items) && iterator.hasNext()) {
+        truncated = true;
+        break;
+      }
+    }
+    return shouldContinue();
+  }
+
+  /**
+   * Adds a trailing report item (see the class documentation).
+   *
+   * @param item The item to add.
+   */
+  void addTrailing(ValidationReportItem item) {
+    add(item, trailingItems);
+  }
+
+  private boolean add(ValidationReportItem item, List<ValidationReportItem> destination) {
+    if (stopped || itemCount >= options.maxReportItems()) {
+      stopped = true;
+      truncated = true;
+      return false;
+    }
+    final ValidationReportItem sharedItem = new ValidationReportItem(share(item.subject()),
+        share(item.predicate()), share(item.object()), share(item.message()), item.severity());
+    if (sink == null) {
+      destination.add(sharedItem);
+    } else {
+      try {
+        sink.reportItem(sharedItem);
+      } catch (Exception e) {
+        sinkFailure = e;
+        stopped = true;
+        return false;
+      }
+    }
+    itemCount++;
+    if (severity == null || ValidationIssueSeverity.comparator().compare(item.severity(),
+        severity) > 0) {
+      severity = item.severity();
+    }
+    if (item.severity() == ValidationIssueSeverity.ERROR) {
+      stopped = stopped || options.stopAtFirstError();
+    }
+    return !stopped;
+  }
+
+  private String share(String value) {
+    return value == null ? null : sharedStrings.computeIfAbsent(value, key -> key);
+  }
+
+  /**
+   * @return Whether the validation should continue. If this returns false, any remaining phases
+   * should be skipped (and reported through {@link #markTruncated()}).
+   */
+  boolean shouldContinue() {
+    return !stopped;
+  }
+
+  /**
+   * @return Whether an item with severity {@link ValidationIssueSeverity#ERROR} was added.
+   */
+  boolean isErrorFound() {
+    return severity == ValidationIssueSeverity.ERROR;
+  }
+
+  /**
+   * @return The exception that the sink threw, or null if it did not throw one. If the sink threw
+   * an exception, it is not called again.
+   */
+  Exception getSinkFailure() {
+    return sinkFailure;
+  }
+
+  /**
+   * Records that not all results are reported (e.g. because the remaining phases of the validation
+   * are skipped), so that the report is marked as truncated.
+   */
+  void markTruncated() {
+    stopped = true;
+    truncated = true;
+  }
+
+  /**
+   * Creates the report. If the items were passed on to a sink, the report contains no items (but
+   * the severity does reflect the items).
+   *
+   * @param recordId The record ID. Can be null.
+   * @return The report.
+   */
+  ValidationReport toReport(String recordId) {
+    final List<ValidationReportItem> allItems = new ArrayList<>(items);
+    allItems.addAll(trailingItems);
+    return new ValidationReport(recordId, severity, allItems, truncated);
+  }
+}
@@ -0,0 +1,40 @@
+package eu.europeana.metis.edm.ext.schema;
+
+/**
+ * <p>Implementations of this interface can receive the results of a record validation as they
+ * are produced, instead of as a {@link ValidationReport} that holds all items in memory (see
+ * {@link EdmExternalValidator#validateSingleRecord(java.io.InputStream,
+ * eu.europeana.metis.common.rdf.RdfRepresentation, ValidationReportSink)}). This is useful for
+ * records with very many issues, e.g. when the items are written straight to a file or a database.
+ * </p>
+ * <p>For every record, {@link #reportItem(ValidationReportItem)} is called for each item (in the
+ * order in which the items are found), followed by exactly one call to
+ * {@link #reportCompleted(String, ValidationIssueSeverity, boolean)}, unless the sink throws an
+ * exception. Both methods are called from the validating thread.
+ * </p>
+ *
+ * @param <E> Exception type to throw.
+ */
+public interface ValidationReportSink<E extends Exception> {
+
+  /**
+   * Receives a report item.
+   *
+   * @param item The report item. Is not null.
+   * @throws E When there is an issue with processing the item. This ends the validation of the
+   *           record: the exception is rethrown by the validator.
+   */
+  void reportItem(ValidationReportItem item) throws E;
+
+  /**
+   * Receives the completion of the validation of a record. The parameters have the same meaning as
+   * in {@link ValidationReport}.
+   *
+   * @param recordId  The ID of the record that was encountered. Can be null.
+   * @param severity  The highest severity of the reported items, or null if there were none.
+   * @param truncated Whether the validation was cut short.
+   * @throws E When there is an issue with processing the completion.
+   */
+  void reportCompleted(String recordId, ValidationIssueSeverity severity, boolean truncated)
+      throws E;
+}
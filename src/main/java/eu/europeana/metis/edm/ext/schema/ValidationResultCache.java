@@ -0,0 +1,340 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import eu.europeana.metis.common.rdf.RdfRepresentation;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * <p>A cache for validation results, to be used with {@link EdmExternalValidator}. Records are
+ * identified by a hash (SHA-256) of their serialized content and representation, so that
+ * byte-identical input (e.g. unchanged records in a re-harvest) does not need to be validated
+ * again. The hash also covers a fingerprint of the shapes and class definitions, so that results
+ * from a different version of the schema are never returned.
+ * </p>
+ * <p>The cache is bounded both in the number of entries and in the (estimated) memory size of the
+ * stored reports: when either bound is exceeded, the least recently used entries are evicted. The
+ * cache can be saved to and loaded from a file, so that it survives restarts.
+ * </p>
+ * <p>Instances of this class are thread-safe.</p>
+ */
+public class ValidationResultCache {
+
+  private static final int FILE_FORMAT_MAGIC = 0x45564331;
+  private static final int FILE_FORMAT_VERSION = 1;
+
+  /**
+   * The version of the validation logic. This needs to be increased whenever the code changes in
+   * such a way that the same record with the same shapes would result in a different report.
+   */
+  private static final int VALIDATION_LOGIC_VERSION = 1;
+
+  // Rough estimates of the memory use of the objects in the cache (excluding the strings).
+  private static final int ENTRY_OVERHEAD_BYTES = 256;
+  private static final int ITEM_OVERHEAD_BYTES = 64;
+
+  private final int maxEntries;
+  private final long maxSizeInBytes;
+  private final LinkedHashMap<String, ValidationReport> entries =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private long sizeInBytes = 0;
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+
+  /**
+   * Constructor. Creates an empty cache.
+   *
+   * @param maxEntries     The maximum number of entries in the cache. Must be positive.
+   * @param maxSizeInBytes The maximum (estimated) memory size of the cache. Must be positive.
+   */
+  public ValidationResultCache(int maxEntries, long maxSizeInBytes) {
+    if (maxEntries < 1 || maxSizeInBytes < 1) {
+      throw new IllegalArgumentException("The cache bounds must be positive.");
+    }
+    this.maxEntries = maxEntries;
+    this.maxSizeInBytes = maxSizeInBytes;
+  }
+
+  /**
+   * Creates a cache with the entries saved in the given file (see {@link #save(Path)}). If the
+   * file does not exist, or if it was saved with a different version of the shapes or of this
+   * library, an empty cache is returned.
+   *
+   * @param file           The file to load.
+   * @param maxEntries     The maximum number of entries in the cache. Must be positive.
+   * @param maxSizeInBytes The maximum (estimated) memory size of the cache. Must be positive.
+   * @return The cache.
+   * @throws IOException In case the file exists but could not be read.
+   */
+  public static ValidationResultCache load(Path file, int maxEntries, long maxSizeInBytes)
+      throws IOException {
+    final ValidationResultCache cache = new ValidationResultCache(maxEntries, maxSizeInBytes);
+    if (!Files.exists(file)) {
+      return cache;
+    }
+    try (DataInputStream input = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file)))) {
+      if (input.readInt() != FILE_FORMAT_MAGIC || input.readInt() != FILE_FORMAT_VERSION
+          || !Fingerprint.VALUE.equals(input.readUTF())) {
+        return cache;
+      }
+      final int entryCount = input.readInt();
+      for (int i = 0; i < entryCount; i++) {
+        final String key = input.readUTF();
+        cache.put(key, readReport(input));
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Saves the entries of this cache to a file, in order of use, so that they can be loaded later.
+   * The file is replaced atomically (where supported by the file system).
+   *
+   * @param file The file to save to.
+   * @throws IOException In case the file could not be written.
+   */
+  public void save(Path file) throws IOException {
+    final List<Entry<String, ValidationReport>> entriesToSave;
+    synchronized (this) {
+      entriesToSave = entries.entrySet().stream().map(Map.Entry::copyOf).toList();
+    }
+    final Path directory = file.toAbsolutePath().getParent();
+    final Path temporaryFile =
+        Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+    try {
+      try (DataOutputStream output = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+        output.writeInt(FILE_FORMAT_MAGIC);
+        output.writeInt(FILE_FORMAT_VERSION);
+        output.writeUTF(Fingerprint.VALUE);
+        output.writeInt(entriesToSave.size());
+        for (Entry<String, ValidationReport> entry : entriesToSave) {
+          output.writeUTF(entry.getKey());
+          writeReport(output, entry.getValue());
+        }
+      }
+      try {
+        Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temporaryFile);
+    }
+  }
+
+  /**
+   * @return The number of entries in the cache.
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return The number of times a report was found in the cache.
+   */
+  public long getHitCount() {
+    return hitCount.sum();
+  }
+
+  /**
+   * @return The number of times a report was not found in the cache.
+   */
+  public long getMissCount() {
+    return missCount.sum();
+  }
+
+  /**
+   * Removes all entries from the cache.
+   */
+  public synchronized void clear() {
+    entries.clear();
+    sizeInBytes = 0;
+  }
+
+  /**
+   * Gets the report for a record from the cache, or computes (and caches) it if it is not present.
+   * Reports obtained with different validation options are cached separately. The computation is
+   * not performed while holding a lock: if the same record is validated concurrently, it may be
+   * computed more than once.
+   *
+   * @param record         The serialized record.
+   * @param representation The representation of the record.
+   * @param options        The validation options.
+   * @param validation     The function that validates the record.
+   * @return The report. This is always a new instance (with a new list of items).
+   */
+  ValidationReport getOrCompute(byte[] record, RdfRepresentation representation,
+      ValidationOptions options, Supplier<ValidationReport> validation) {
+    final String key = computeKey(record, representation, options);
+    final ValidationReport cachedReport;
+    synchronized (this) {
+      cachedReport = entries.get(key);
+    }
+    if (cachedReport != null) {
+      hitCount.increment();
+      return copy(cachedReport);
+    }
+    missCount.increment();
+    final ValidationReport report = validation.get();
+    put(key, copy(report));
+    return report;
+  }
+
+  private synchronized void put(String key, ValidationReport report) {
+    final ValidationReport previous = entries.put(key, report);
+    if (previous != null) {
+      sizeInBytes -= estimateSize(key, previous);
+    }
+    sizeInBytes += estimateSize(key, report);
+
+    // Evict the least recently used entries until we are within bounds.
+    final Iterator<Entry<String, ValidationReport>> iterator = entries.entrySet().iterator();
+    while ((entries.size() > maxEntries || sizeInBytes > maxSizeInBytes) && iterator.hasNext()) {
+      final Entry<String, ValidationReport> eldest = iterator.next();
+      sizeInBytes -= estimateSize(eldest.getKey(), eldest.getValue());
+      iterator.remove();
+    }
+  }
+
+  private static ValidationReport copy(ValidationReport report) {
+    return new ValidationReport(report.recordId(), report.severity(),
+        new ArrayList<>(report.reportItems()), report.truncated());
+  }
+
+  private static String computeKey(byte[] record, RdfRepresentation representation,
+      ValidationOptions options) {
+    final MessageDigest digest = createDigest();
+    digest.update(Fingerprint.VALUE.getBytes(StandardCharsets.UTF_8));
+    digest.update(representation.name().getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+    digest.update((options.stopAtFirstError() + "," + options.maxReportItems() + ","
+        + options.skipShaclAfterGlobalFailure()).getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+    digest.update(record);
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  private static long estimateSize(String key, ValidationReport report) {
+    long result = ENTRY_OVERHEAD_BYTES + estimateSize(key) + estimateSize(report.recordId());
+    for (ValidationReportItem item : report.reportItems()) {
+      result += ITEM_OVERHEAD_BYTES + estimateSize(item.subject())
+          + estimateSize(item.predicate()) + estimateSize(item.object())
+          + estimateSize(item.message());
+    }
+    return result;
+  }
+
+  private static long estimateSize(String value) {
+    return value == null ? 0 : 2L * value.length();
+  }
+
+  private static void writeReport(DataOutputStream output, ValidationReport report)
+      throws IOException {
+    writeString(output, report.recordId());
+    writeSeverity(output, report.severity());
+    output.writeBoolean(report.truncated());
+    output.writeInt(report.reportItems().size());
+    for (ValidationReportItem item : report.reportItems()) {
+      writeString(output, item.subject());
+      writeString(output, item.predicate());
+      writeString(output, item.object());
+      writeString(output, item.message());
+      writeSeverity(output, item.severity());
+    }
+  }
+
+  private static ValidationReport readReport(DataInputStream input) throws IOException {
+    final String recordId = readString(input);
+    final ValidationIssueSeverity severity = readSeverity(input);
+    final boolean truncated = input.readBoolean();
+    final int itemCount = input.readInt();
+    final List<ValidationReportItem> items = new ArrayList<>(itemCount);
+    for (int i = 0; i < itemCount; i++) {
+      items.add(new ValidationReportItem(readString(input), readString(input), readString(input),
+          readString(input), readSeverity(input)));
+    }
+    return new ValidationReport(recordId, severity, items, truncated);
+  }
+
+  private static void writeString(DataOutputStream output, String value) throws IOException {
+    if (value == null) {
+      output.writeInt(-1);
+    } else {
+      final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+  }
+
+  private static String readString(DataInputStream input) throws IOException {
+    final int length = input.readInt();
+    return length < 0 ? null : new String(input.readNBytes(length), StandardCharsets.UTF_8);
+  }
+
+  private static void writeSeverity(DataOutputStream output, ValidationIssueSeverity severity)
+      throws IOException {
+    writeString(output, severity == null ? null : severity.name());
+  }
+
+  private static ValidationIssueSeverity readSeverity(DataInputStream input) throws IOException {
+    final String severity = readString(input);
+    return severity == null ? null : ValidationIssueSeverity.valueOf(severity);
+  }
+
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported.", e);
+    }
+  }
+
+  /**
+   * Lazy initialization holder for the fingerprint of the validation setup: a hash of the shapes,
+   * the class definitions and the version of the validation logic.
+   */
+  private static final class Fingerprint {
+
+    private static final String VALUE = computeFingerprint();
+
+    private static String computeFingerprint() {
+      final MessageDigest digest = createDigest();
+      digest.update(("v" + VALIDATION_LOGIC_VERSION).getBytes(StandardCharsets.UTF_8));
+      for (String resource : List.of(ValidationShapes.SOURCE_SHAPES_RESOURCE,
+          SupportedResourceTypes.CLASS_DEFINITIONS_RESOURCE)) {
+        try (InputStream input = ValidationResultCache.class.getClassLoader()
+            .getResourceAsStream(resource)) {
+          if (input == null) {
+            throw new IllegalStateException("Could not find resource " + resource + ".");
+          }
+          digest.update(input.readAllBytes());
+        } catch (IOException e) {
+          throw new UncheckedIOException("Could not read resource " + resource + ".", e);
+        }
+      }
+      return HexFormat.of().formatHex(digest.digest());
+    }
+  }
+}
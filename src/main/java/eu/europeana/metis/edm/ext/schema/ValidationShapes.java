@@ -0,0 +1,129 @@
+package eu.europeana.metis.edm.ext.schema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.reasoner.ReasonerRegistry;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.shacl.Shapes;
+import org.apache.jena.sparql.graph.GraphFactory;
+
+/**
+ * <p>This class provides the SHACL shapes against which records are validated. The shapes are
+ * defined in Turtle, using OWL restrictions to abstract common constructs (see the README). This
+ * means that OWL inference is required on the shape definitions before they can be used.
+ * </p>
+ * <p>As running the OWL reasoner is expensive, this inference is performed at build time (see
+ * {@link ShapesPrecompiler}) and the result is shipped as a materialized, reasoner-free N-Triples
+ * file. At runtime, this file is loaded directly. Only if it is not available (e.g. when running
+ * from sources without having executed the build) do we fall back to running the reasoner. If the
+ * system property {@value #VERIFY_PRECOMPILED_SHAPES_PROPERTY} is set to <code>true</code>, the
+ * precompiled shapes are checked against the source definitions when loaded.
+ * </p>
+ */
+final class ValidationShapes {
+
+  static final String SOURCE_SHAPES_RESOURCE = "schema/edm_ext_shacl_shapes.ttl";
+  static final String PRECOMPILED_SHAPES_RESOURCE = "schema/edm_ext_shacl_shapes.nt";
+  static final String VERIFY_PRECOMPILED_SHAPES_PROPERTY =
+      "eu.europeana.metis.edm.ext.schema.verifyPrecompiledShapes";
+
+  private ValidationShapes() {
+  }
+
+  /**
+   * Gets the shapes. They are loaded on first access. This method does not lock, and the returned
+   * shapes can be used concurrently by multiple validations.
+   *
+   * @return The shapes.
+   */
+  static Shapes get() {
+    return Holder.SHAPES.get("the validation shapes");
+  }
+
+  /**
+   * Loads the shapes from the source definitions and runs the OWL reasoner on them. The result is
+   * copied into a plain graph so that it can be used (and serialized) without further reasoning.
+   *
+   * @return The materialized shapes graph.
+   */
+  static Graph materializeSourceShapes() {
+    final Model shapesModel = ModelFactory.createDefaultModel()
+        .read(SOURCE_SHAPES_RESOURCE, Lang.TTL.getLabel());
+    final Model enhancedShapeModel = ModelFactory
+        .createInfModel(ReasonerRegistry.getOWLReasoner(), shapesModel);
+    final Graph result = GraphFactory.createDefaultGraph();
+    enhancedShapeModel.getGraph().find().forEachRemaining(triple -> {
+
+      // The reasoner may produce generalized triples that can not be serialized. We skip them:
+      // they are not relevant for the shapes.
+      if (isSerializable(triple)) {
+        result.add(triple);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Loads the precompiled (materialized) shapes graph from the classpath.
+   *
+   * @return The precompiled shapes graph, or <code>null</code> if it is not available.
+   */
+  static Graph loadPrecompiledShapes() {
+    try (InputStream input = ValidationShapes.class.getClassLoader()
+        .getResourceAsStream(PRECOMPILED_SHAPES_RESOURCE)) {
+      if (input == null) {
+        return null;
+      }
+      final Graph result = GraphFactory.createDefaultGraph();
+      RDFParser.source(input).lang(Lang.NTRIPLES).parse(result);
+      return result;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read precompiled shapes.", e);
+    }
+  }
+
+  /**
+   * Checks whether the precompiled shapes are available and match the source definitions.
+   *
+   * @return Whether the precompiled shapes are available and match the source definitions.
+   */
+  static boolean precompiledShapesMatchSource() {
+    final Graph precompiledShapes = loadPrecompiledShapes();
+    return precompiledShapes != null
+        && precompiledShapes.isIsomorphicWith(materializeSourceShapes());
+  }
+
+  private static boolean isSerializable(Triple triple) {
+    return (triple.getSubject().isURI() || triple.getSubject().isBlank())
+        && triple.getPredicate().isURI();
+  }
+
+  private static Shapes loadShapes() {
+    final Graph precompiledShapes = loadPrecompiledShapes();
+    if (precompiledShapes == null) {
+      return Shapes.parse(materializeSourceShapes());
+    }
+    if (Boolean.getBoolean(VERIFY_PRECOMPILED_SHAPES_PROPERTY)
+        && !precompiledShapes.isIsomorphicWith(materializeSourceShapes())) {
+      throw new IllegalStateException("The precompiled shapes (" + PRECOMPILED_SHAPES_RESOURCE
+          + ") do not match the source definitions (" + SOURCE_SHAPES_RESOURCE + ").");
+    }
+    return Shapes.parse(precompiledShapes);
+  }
+
+  /**
+   * Lazy initialization holder: the shapes are loaded when this class is first accessed, after
+   * which they are read without synchronization. A failure is kept and reported on every access
+   * (see {@link LoadResult}).
+   */
+  private static final class Holder {
+
+    private static final LoadResult<Shapes> SHAPES = LoadResult.load(ValidationShapes::loadShapes);
+  }
+}